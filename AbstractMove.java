@@ -1,19 +1,7 @@
 // Abstract class which serves to encompass the Move and Capture classes
+// Moves are searched as ints packed by PackedMove, these classes are the
+// readable form used by the GUI (see ProtoBoard.toAbstractMove)
 public abstract class AbstractMove {
 
-    protected int turnKingMove;
-
-    public void setTurnKingMove(int i){
-        turnKingMove = i;
-    }
-
-    public int getTurnKingMove(){
-        return turnKingMove;
-    }
-
-    public void reset(){
-        turnKingMove = -1;
-    }
-
     public abstract boolean getType();
 }
@@ -0,0 +1,173 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Analyzes every position of a file with a pool of engines and writes one
+// result line per position, in the order of the input. Positions are read one
+// at a time, and at most a few per worker are in flight, so files of any size
+// are analyzed in constant memory. When the output falls behind, reading waits
+//
+// Input is one FEN position per line (see ProtoBoard.toFen), or positions in the
+// binary form of ProtoBoard.write if the file name ends in .bin
+// Output lines are tab separated: FEN, best move, score for the side to move,
+// completed depth and nodes. Positions without legal moves get "none" as move.
+// With --multipv k the k best moves follow in one column each, best first, as
+// the score and the line after the move, like "12 11-15 23-19 8-11"
+//
+// From the repository root:
+//   javac -d out *.java
+//   java -cp out BatchAnalyzer <input> <output> [--depth <plies> | --time <ms>] [--threads <n>] [--multipv <k>]
+public class BatchAnalyzer {
+    // positions queued or being analyzed per worker
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+    // small, because it is cleared before every position
+    private static final int TT_MEGABYTES = 4;
+
+    private final SearchLimits limits;
+    private final int threads;
+    // best moves searched for exact scores and lines, 1 for just the best move
+    private int multiPv = 1;
+    // one engine per worker thread, each searching with a single thread
+    private final ThreadLocal<Engine> engines = ThreadLocal.withInitial(() -> new Engine(TT_MEGABYTES));
+
+    public BatchAnalyzer(SearchLimits limits, int threads) {
+        this.limits = limits;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("usage: BatchAnalyzer <input> <output> [--depth <plies> | --time <ms>] [--threads <n>] [--multipv <k>]");
+            return;
+        }
+        SearchLimits limits = SearchLimits.depth(12);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int multiPv = 1;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--depth": limits = SearchLimits.depth(Integer.parseInt(args[i + 1])); break;
+                case "--time": limits = SearchLimits.moveTime(Long.parseLong(args[i + 1])); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--multipv": multiPv = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown argument " + args[i]);
+            }
+        }
+        long start = System.currentTimeMillis();
+        BatchAnalyzer analyzer = new BatchAnalyzer(limits, threads);
+        analyzer.setMultiPv(multiPv);
+        long positions;
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            if (args[0].endsWith(".bin")) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[0]))))) {
+                    positions = analyzer.analyze(() -> {
+                        try {
+                            return ProtoBoard.read(in);
+                        } catch (EOFException e) {
+                            return null;
+                        }
+                    }, out);
+                }
+            }
+            else {
+                try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                    positions = analyzer.analyze(() -> {
+                        String line;
+                        // blank lines and comments are skipped
+                        do {
+                            line = in.readLine();
+                        } while (line != null && (line.trim().isEmpty() || line.startsWith("#")));
+                        return line == null ? null : ProtoBoard.fromFen(line);
+                    }, out);
+                }
+            }
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(positions + " positions in " + millis + " ms, "
+                + positions * 1000 / millis + " positions/s");
+    }
+
+    public void setMultiPv(int multiPv) {
+        this.multiPv = multiPv;
+    }
+
+    // source of the positions to analyze, returns null after the last one
+    public interface PositionReader {
+        ProtoBoard next() throws IOException;
+    }
+
+    // analyzes every position from in and writes the results to out in input order,
+    // returns the number of positions
+    public long analyze(PositionReader in, Writer out) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // results in input order, the reader blocks when it is full
+        BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(threads * IN_FLIGHT_PER_WORKER);
+        long positions = 0;
+        try {
+            ProtoBoard protoBoard;
+            while ((protoBoard = in.next()) != null) {
+                ProtoBoard position = protoBoard;
+                // write out finished results at the head before waiting for room
+                while (pending.remainingCapacity() == 0 || (!pending.isEmpty() && pending.peek().isDone()))
+                    writeResult(pending.take(), out);
+                pending.put(workers.submit(() -> analyze(position)));
+                positions++;
+            }
+            while (!pending.isEmpty())
+                writeResult(pending.take(), out);
+        } finally {
+            workers.shutdownNow();
+        }
+        return positions;
+    }
+
+    private static void writeResult(Future<String> result, Writer out) throws IOException, InterruptedException {
+        try {
+            out.write(result.get());
+            out.write(System.lineSeparator());
+        } catch (ExecutionException e) {
+            throw new IOException("analysis failed", e.getCause());
+        }
+    }
+
+    // searches one position and returns its result line
+    private String analyze(ProtoBoard protoBoard) {
+        String fen = protoBoard.toFen();
+        int color = protoBoard.getSideToMove();
+        Engine engine = engines.get();
+        // every position is searched from scratch, so results do not depend on
+        // which worker got it or what that worker searched before
+        engine.clear();
+        engine.setMultiPv(multiPv);
+        engine.nextBestMove(protoBoard, color, limits);
+        AbstractMove best = engine.getBestMove();
+        if (best == null)
+            return fen + "\tnone\t-\t0\t0";
+        String move = ProtoBoard.toNotation(ProtoBoard.encodeMove(best));
+        // a forced move is played without a search and has no score
+        String score = engine.getCompletedDepth() > 0 ? Integer.toString(engine.getEval()) : "-";
+        StringBuilder result = new StringBuilder(fen + "\t" + move + "\t" + score + "\t"
+                + engine.getCompletedDepth() + "\t" + engine.getNodes());
+        if (multiPv > 1) {
+            for (PrincipalVariation line : engine.getPrincipalVariations()) {
+                result.append('\t').append(line.getScore()).append(' ').append(line);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -1,6 +1,5 @@
 // Contributions by: Matthew Proetsch
 
-import java.util.ArrayList;
 import java.util.Vector;
 import java.awt.*;
 
@@ -16,9 +15,9 @@ public class Board {
     public static final int cols = 8;
     // An array of Squares that represents the game board
     private final Square[][] gameBoard;
-	// An array of shorts that represent the game board while allowing
-	// quicker calculations and less memory usage
-	private final ProtoBoard protoBoard;
+	// The position on a ProtoBoard, which allows quicker calculations and
+	// less memory usage, with the legal moves of the side to move
+	private final GameState gameState;
 
 
     // Constructor takes no args and produces a Board of
@@ -42,7 +41,7 @@ public class Board {
     		lastcolor = !lastcolor;
     	}
 
-		protoBoard = new ProtoBoard();
+		gameState = new GameState();
     }
 
     public static boolean inBounds(int row, int col) {
@@ -61,7 +60,12 @@ public class Board {
 
 	// Returns the underlying (more efficient) protoboard of the board array
 	public ProtoBoard getProtoBoard(){
-		return protoBoard;
+		return gameState.getProtoBoard();
+	}
+
+	// Returns the game state, which generates the legal moves once per position
+	public GameState getGameState(){
+		return gameState;
 	}
 
     // Fill this Board with Black pieces on top, and Red pieces on bottom
@@ -71,7 +75,7 @@ public class Board {
 		//Establish the Black side first
 		for(int row = 0; row < 3; row++) {
 			for (int col = 1 - (row % 2); col < cols; col+= 2) {
-				protoBoard.setSquare(row, col, (short) 2);
+				gameState.setSquare(row, col, (short) 2);
 				getSquare(row, col).setOccupant(new Piece(Color.BLACK, row, col));
 			}
 		}
@@ -79,7 +83,7 @@ public class Board {
 		//Now establish the Red side
 		for(int row = 5; row < 8; row++) {
 			for (int col = 1 - (row % 2); col < 8; col+= 2) {
-				protoBoard.setSquare(row, col, (short) -2);
+				gameState.setSquare(row, col, (short) -2);
 				getSquare(row, col).setOccupant(new Piece(Color.RED, row, col));
 			}
 		}
@@ -128,8 +132,8 @@ public class Board {
 
 	//assumes move is possible
 	public void makeMove(AbstractMove abstractMove){
-		// let protoBoard make move
-		protoBoard.makeMove(abstractMove);
+		// let gameState make move
+		gameState.makeMove(abstractMove);
 
 		if(abstractMove.getType()){
 			Move move = (Move) abstractMove;
@@ -164,49 +168,12 @@ public class Board {
 	}
 
 	// Find all possible Squares to which this piece can move
-	// Built upon generateLegalMoves
+	// Built upon the legal moves cached by gameState
 	public Vector<Square> getPossibleSquares(Piece p) {
-		Color pColor = p.getColor();
-		int color;
-		if(pColor == Color.BLACK){
-			color = 1;
-		} else {
-			color = -1;
-		}
-		ArrayList<AbstractMove> legalMoves = protoBoard.generateLegalMoves(color);
+		int color = p.getColor() == Color.BLACK ? 1 : -1;
 		Vector<Square> possibleSquares = new Vector<Square>();
-
-		int row = p.getRow();
-		int col = p.getCol();
-
-		if(!legalMoves.isEmpty()) {
-			//if legalMoves are captures
-			if (!legalMoves.get(0).getType()) {
-				for (AbstractMove legalMove : legalMoves) {
-					Capture capture = (Capture) legalMove;
-					//if location of capture coincides with location of piece
-					if (capture.getRow()[0] == row && capture.getCol()[0] == col) {
-						//add last square the piece lands on
-						int lastIndex = capture.getSize() - 1;
-						int finalRow = capture.getRow()[lastIndex] + 2 * capture.getYDir()[lastIndex];
-						int finalCol = capture.getCol()[lastIndex] + 2 * capture.getXDir()[lastIndex];
-						possibleSquares.add(gameBoard[finalRow][finalCol]);
-					}
-				}
-			}
-			//if legalMoves are moves
-			else {
-				for (AbstractMove legalMove : legalMoves) {
-					Move move = (Move) legalMove;
-					//if location of move coincides with location of piece
-					if (move.getRow() == row && move.getCol() == col) {
-						//add square piece moves to
-						int finalRow = move.getRow() + move.getYDir();
-						int finalCol = move.getCol() + move.getXDir();
-						possibleSquares.add(gameBoard[finalRow][finalCol]);
-					}
-				}
-			}
+		for (int target : gameState.getTargets(p.getRow(), p.getCol(), color)) {
+			possibleSquares.add(gameBoard[ProtoBoard.rowOf(target)][ProtoBoard.colOf(target)]);
 		}
 		return possibleSquares;
 	}
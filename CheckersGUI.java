@@ -6,8 +6,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 public class CheckersGUI implements MouseListener,
 		ActionListener {
@@ -42,18 +45,27 @@ public class CheckersGUI implements MouseListener,
 	/** The board which will store our game's state */
 	private Board board;
 
-	/** The number of checkers remaining for Black side */
-	private int blackCheckersLeft;
-
-	/** The number of checkers remaining for Red side */
-	private int redCheckersLeft;
-
 	/** Hold a reference to the currently selected Piece */
 	private Square selectedSquare;
 
 	/** Engine object user is playing against */
 	private Engine engine;
 
+	/** Time the engine may think about each move, in milliseconds */
+	private static final long ENGINE_MOVE_TIME = 5000;
+
+	/** Directory the endgame databases are loaded from */
+	private static final String ENDGAME_DIRECTORY = "endgame";
+
+	/** File the opening book is loaded from */
+	private static final String OPENING_BOOK = "opening.book";
+
+	/** File tuned evaluation weights are loaded from */
+	private static final String EVAL_WEIGHTS = "eval.weights";
+
+	/** The search the engine is running in the background, null when it is the user's turn */
+	private CompletableFuture<AbstractMove> engineSearch;
+
 	/** Constructor takes no arguments and forms a new game */
 	public CheckersGUI() {
 
@@ -63,15 +75,39 @@ public class CheckersGUI implements MouseListener,
 		//set the initial turn
 		currentTurn = Color.GREEN;
 
-		//initial values for checkers
-		redCheckersLeft = 12;
-		blackCheckersLeft = 12;
-
 		//show how many checkers are left
 		updateStatus();
 
-		//create Engine object
+		//create Engine object that searches on every core
 		engine = new Engine();
+		engine.setThreads(Runtime.getRuntime().availableProcessors());
+
+		//use the endgame databases if EndgameGenerator has built them
+		if (Files.isDirectory(Paths.get(ENDGAME_DIRECTORY))) {
+			try {
+				engine.setEndgameDatabase(new EndgameDatabase(Paths.get(ENDGAME_DIRECTORY)));
+			} catch (IOException e) {
+				System.out.println("Could not load the endgame databases: " + e.getMessage());
+			}
+		}
+
+		//play the opening book if OpeningBookBuilder has written one
+		if (Files.isRegularFile(Paths.get(OPENING_BOOK))) {
+			try {
+				engine.setOpeningBook(new OpeningBook(Paths.get(OPENING_BOOK)));
+			} catch (IOException e) {
+				System.out.println("Could not load the opening book: " + e.getMessage());
+			}
+		}
+
+		//evaluate with the weights EvalTuner has written
+		if (Files.isRegularFile(Paths.get(EVAL_WEIGHTS))) {
+			try {
+				engine.setEvalWeights(EvalWeights.read(Paths.get(EVAL_WEIGHTS)));
+			} catch (IOException e) {
+				System.out.println("Could not load the evaluation weights: " + e.getMessage());
+			}
+		}
 
 		//event-driven onward
 	}
@@ -131,6 +167,12 @@ public class CheckersGUI implements MouseListener,
 	public void mouseClicked(MouseEvent e) {
 
 		Square sel = (Square)e.getComponent();
+		//Ignore the board while the engine is thinking
+		if(engineSearch != null) {
+			piecesLabel.setText("The engine is thinking...");
+			return;
+		}
+
 		//Ensure that the correct color Piece has been chosen
 		//The Piece's color should be equal to currentTurn, unless this is the first move
 		//in which case currentTurn is going to be Color.GREEN
@@ -182,75 +224,26 @@ public class CheckersGUI implements MouseListener,
 			//The user is trying to make a move by moving from the selectedSquare to the one they just clicked
 			//First check to see if their choice corresponds to a square in possibleMoves
 
-			boolean found = false;
-			boolean jumped = false;
-
-			Vector<Square> oldPossibleSquares = board.getPossibleSquares(selectedSquare.getOccupant());
-			Capture capture = null;
-
-			for(Square choice : oldPossibleSquares) {
-				if(choice.equals(sel)) {
-					//Move found in the Vector of possible moves, so perform it
-					//Generate all legalMoves
-					int color;
-					if(selectedSquare.getOccupant().getColor() == Color.BLACK){
-						color = 1;
-					} else {
-						color = -1;
-					}
-					ArrayList<AbstractMove> legalMoves = board.getProtoBoard().generateLegalMoves(color);
-
-					//First, check to see if this was the first move being performed
-					if(currentTurn == Color.GREEN) {
-						currentTurn = selectedSquare.getOccupant().getColor();
-					}
+			//The legal moves of this position are generated once and kept by the game state
+			int color = selectedSquare.getOccupant().getColor() == Color.BLACK ? 1 : -1;
+			int move = board.getGameState().findMove(selectedSquare.getRow(), selectedSquare.getCol(),
+					sel.getRow(), sel.getCol(), color);
+			boolean found = move != PackedMove.NONE;
+			Vector<Square> oldPossibleSquares = null;
 
-					//Next, store in a variable whether or not a jump was performed
-					if(!legalMoves.get(0).getType()) {
-						for (AbstractMove legalMove : legalMoves) {
-							capture = (Capture) legalMove;
-							//if location of capture coincides with location of piece
-							if ((capture.getRow()[0] == selectedSquare.getRow()
-									&& capture.getCol()[0] == selectedSquare.getCol())
-									&& (capture.getRow()[capture.getSize() - 1] + 2 * capture.getYDir()[capture.getSize() - 1] == sel.getRow()
-									&& capture.getCol()[capture.getSize() - 1] + 2 * capture.getXDir()[capture.getSize() - 1] == sel.getCol())) {
-								//makeMove
-								board.makeMove(capture);
-								//indicate a capture occured
-								jumped = true;
-							}
-						}
-					}
-					//if legalMoves are moves
-					else{
-						for (AbstractMove legalMove : legalMoves) {
-							Move move = (Move) legalMove;
-							//if location of move coincides with location of piece
-							if ((move.getRow() == selectedSquare.getRow()
-									&& move.getCol() == selectedSquare.getCol())
-									&& (move.getRow() + move.getYDir() == sel.getRow()
-									&& move.getCol() + move.getXDir() == sel.getCol())){
-								board.makeMove(move);
-							}
-						}
-					}
+			if(found) {
+				//Remember the highlighted squares before the move changes the position
+				oldPossibleSquares = board.getPossibleSquares(selectedSquare.getOccupant());
 
-					//Finally, indicate internally that a move has been found and performed
-					found = true;
+				//First, check to see if this was the first move being performed
+				if(currentTurn == Color.GREEN) {
+					currentTurn = selectedSquare.getOccupant().getColor();
 				}
+
+				board.makeMove(ProtoBoard.toAbstractMove(move));
 			}
 
 			if(found) {
-				if(jumped) {
-                    assert capture != null;
-                    if(currentTurn == Color.BLACK) {
-                        redCheckersLeft -= capture.getSize();
-					}
-					else {
-                        blackCheckersLeft -= capture.getSize();
-					}
-				}
-
 				//Unhighlight the moves from the Piece's previous position
 				selectedSquare.setHighlight(false);
 				for (Square unhighlight : oldPossibleSquares)
@@ -273,7 +266,7 @@ public class CheckersGUI implements MouseListener,
 						frame.setVisible(false);
 						frame.dispose();
 					}
-
+					return;
 				}
 				engineMove();
 			}
@@ -283,6 +276,7 @@ public class CheckersGUI implements MouseListener,
 		}
 	}
 
+	/** Start the engine's search in the background, the move is played on the event thread once it is found */
 	private void engineMove() {
 		int methodColor;
 		if(this.currentTurn == Color.BLACK){
@@ -291,20 +285,28 @@ public class CheckersGUI implements MouseListener,
 			methodColor = -1;
 		}
 		long start = System.currentTimeMillis();
-		engine.nextBestMove(board.getProtoBoard(), methodColor, 16);
-		board.makeMove(engine.getBestMove());
-		System.out.println("eval: " + engine.getEval());
-		System.out.println("time: " + (System.currentTimeMillis() - start));
-
-		if(!engine.getBestMove().getType()){
-			Capture capture = (Capture) engine.getBestMove();
-			if(currentTurn == Color.BLACK) {
-				redCheckersLeft -= capture.getSize();
+		Board searchBoard = board;
+		CompletableFuture<AbstractMove> search = engine.searchAsync(board.getProtoBoard(), methodColor,
+				SearchLimits.moveTime(ENGINE_MOVE_TIME));
+		engineSearch = search;
+		search.whenComplete((move, error) -> SwingUtilities.invokeLater(() -> {
+			//The game was restarted while the engine was thinking
+			if(engineSearch != search || searchBoard != board)
+				return;
+			engineSearch = null;
+			if(error != null) {
+				piecesLabel.setText("The engine failed: " + error.getMessage());
+				return;
 			}
-			else {
-				blackCheckersLeft -= capture.getSize();
-			}
-		}
+			System.out.println("eval: " + engine.getEval());
+			System.out.println("time: " + (System.currentTimeMillis() - start));
+			playEngineMove(move);
+		}));
+	}
+
+	/** Play the move found by the engine and check whether it ended the game */
+	private void playEngineMove(AbstractMove bestMove) {
+		board.makeMove(bestMove);
 
 		endTurn();
 		//Update the number of checkers left
@@ -372,7 +374,8 @@ public class CheckersGUI implements MouseListener,
 
 	/** Update the text of piecesLeft to a string representation of the number of pieces left for both sides */
 	public void updateStatus() {
-		piecesLabel.setText("Red pieces left: " + redCheckersLeft + "             Black pieces left: " + blackCheckersLeft);
+		GameState gameState = board.getGameState();
+		piecesLabel.setText("Red pieces left: " + gameState.getPieceCount(-1) + "             Black pieces left: " + gameState.getPieceCount(1));
 	}
 
 
@@ -382,47 +385,26 @@ public class CheckersGUI implements MouseListener,
 	 */
 	public String winner() {
 
+		GameState gameState = board.getGameState();
+
 		//Check first ending condition: one side loses all pieces
-		if(blackCheckersLeft == 0)
+		if(gameState.getPieceCount(1) == 0)
 			return "Red has won by taking Black's pieces!";
 
-		if(redCheckersLeft == 0)
+		if(gameState.getPieceCount(-1) == 0)
 			return "Black has won by taking Red's pieces!";
 
 
-		//Check second ending condition: one side cannot move its remaining pieces
-		boolean redCanMove = false;
-		boolean blackCanMove = false;
-
-		for(int i = 0; i < 8; i++) {
-			for(int j = 0; j < 8; j++) {
-
-				//Get all possible moves for all pieces currently on the board
-				if(board.getSquare(i, j).isOccupied()) {
-					Vector<Square> potentialMoves = board.getPossibleSquares(board.getSquare(i, j).getOccupant());
-
-					if(!potentialMoves.isEmpty()) {
-						//The potentialMoves Vector contains at least one square, so that side is capable of making a move
-						//Find out what the color of the piece that can make the move is, then set its <color>CanMove var to true
-
-						if(board.getSquare(i, j).getOccupant().getColor() == Color.black)
-							blackCanMove = true;
-						else
-							redCanMove = true;
-
-					}
-				}
-			}
-		}
-
-		if(redCanMove && !blackCanMove) {
-			return "Red wins since Black can make no more moves!";
-		}
-		else if(blackCanMove && !redCanMove) {
-			return "Black wins since Red can make no more moves!";
-		}
-		else if(!redCanMove && !blackCanMove) {
-			return "Neither side can make a move!";
+		//Check second ending condition: the side to move cannot move its remaining pieces
+		//Its legal moves are generated once here and kept for highlighting and checking its clicks
+		int color = currentTurn == Color.BLACK ? 1 : -1;
+		if(!gameState.hasLegalMoves(color)) {
+			if(!gameState.hasLegalMoves(-color))
+				return "Neither side can make a move!";
+			else if(color == 1)
+				return "Red wins since Black can make no more moves!";
+			else
+				return "Black wins since Red can make no more moves!";
 		}
 
 		//None of the above cases hold true, so the game is not over yet
@@ -443,6 +425,12 @@ public class CheckersGUI implements MouseListener,
 	/** End the game and start anew by resetting everything */
 	public void restartGame() {
 
+		//Stop the engine if it is still thinking about the old game
+		if(engineSearch != null) {
+			engineSearch.cancel(false);
+			engineSearch = null;
+		}
+
 		frame.setVisible(false);
 		selectedSquare = null;
 
@@ -456,9 +444,6 @@ public class CheckersGUI implements MouseListener,
 		addBoardToPanel(board, boardpanel);
 		frame.add(boardpanel, 0);
 
-		redCheckersLeft = 12;
-		blackCheckersLeft = 12;
-
 		currentTurn = Color.GREEN;
 
 		updateStatus();
@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+// Win/loss/draw databases of positions with few pieces, written by EndgameGenerator.
+// Every material combination (black men, black kings, red men, red kings) is a
+// slice stored in its own file, which is memory mapped and read by all search
+// threads without locking
+//
+// A slice holds one byte per position, indexed by index():
+//    d + 1   the side to move wins and the game ends in d plies
+//   -(d + 1) the side to move loses and the game ends in d plies
+//    0       draw, neither side can force a win
+// Distances longer than MAX_DISTANCE plies are stored as MAX_DISTANCE
+//
+// File layout: MAGIC, VERSION, the four piece counts as bytes, the number of
+// positions, and then the values
+public class EndgameDatabase {
+    // returned by probe when the position is not in the database
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    // longest distance to the end of the game that can be stored in a byte
+    public static final int MAX_DISTANCE = 126;
+    static final int MAGIC = 0x434B4442;
+    static final int VERSION = 1;
+    static final int HEADER = 16;
+    static final String EXTENSION = ".edb";
+
+    // men never stand on their own king row, so each color's men have 28 squares
+    private static final int MAN_SQUARES = 28;
+    // binomial coefficients used to rank sets of squares
+    private static final int[][] CHOOSE = new int[33][33];
+
+    static {
+        for (int n = 0; n <= 32; n++) {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+            }
+        }
+    }
+
+    // mapped slice files, by slice key
+    private final HashMap<Integer, MappedByteBuffer> slices = new HashMap<>();
+    // largest number of pieces of any slice
+    private int maxPieces;
+
+    // maps every slice file in the directory
+    public EndgameDatabase(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    buffer.order(ByteOrder.BIG_ENDIAN);
+                    if (channel.size() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                        throw new IOException(file + " is not an endgame database file");
+                    int blackMen = buffer.get(8);
+                    int blackKings = buffer.get(9);
+                    int redMen = buffer.get(10);
+                    int redKings = buffer.get(11);
+                    if (channel.size() != HEADER + (long) size(blackMen, blackKings, redMen, redKings))
+                        throw new IOException(file + " has the wrong size");
+                    slices.put(sliceKey(blackMen, blackKings, redMen, redKings), buffer);
+                    maxPieces = Math.max(maxPieces, blackMen + blackKings + redMen + redKings);
+                }
+            }
+        }
+    }
+
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    public int getSlices() {
+        return slices.size();
+    }
+
+    // returns the stored value of the position for its side to move, or UNKNOWN
+    public int probe(ProtoBoard protoBoard) {
+        int black = protoBoard.getBlack();
+        int red = protoBoard.getRed();
+        int kings = protoBoard.getKings();
+        if (Integer.bitCount(black | red) > maxPieces)
+            return UNKNOWN;
+        MappedByteBuffer slice = slices.get(sliceKey(black, red, kings));
+        if (slice == null)
+            return UNKNOWN;
+        return slice.get(HEADER + index(black, red, kings, protoBoard.getSideToMove()));
+    }
+
+    // key of the slice with the given numbers of pieces
+    static int sliceKey(int blackMen, int blackKings, int redMen, int redKings) {
+        return blackMen << 12 | blackKings << 8 | redMen << 4 | redKings;
+    }
+
+    // key of the slice a position belongs to
+    static int sliceKey(int black, int red, int kings) {
+        return sliceKey(Integer.bitCount(black & ~kings), Integer.bitCount(black & kings),
+                Integer.bitCount(red & ~kings), Integer.bitCount(red & kings));
+    }
+
+    // number of positions in a slice, including impossible ones where pieces overlap
+    static int size(int blackMen, int blackKings, int redMen, int redKings) {
+        long size = 2L * CHOOSE[MAN_SQUARES][blackMen] * CHOOSE[MAN_SQUARES][redMen]
+                * CHOOSE[32][blackKings] * CHOOSE[32][redKings];
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("slice is too large");
+        return (int) size;
+    }
+
+    // index of a position in its slice, each group of pieces is ranked on its own
+    // black men stand on squares 0-27 and red men on squares 4-31
+    static int index(int black, int red, int kings, int sideToMove) {
+        int blackMen = black & ~kings;
+        int redMen = red & ~kings;
+        int blackKings = black & kings;
+        int redKings = red & kings;
+        int index = rank(blackMen);
+        index = index * CHOOSE[MAN_SQUARES][Integer.bitCount(redMen)] + rank(redMen >>> 4);
+        index = index * CHOOSE[32][Integer.bitCount(blackKings)] + rank(blackKings);
+        index = index * CHOOSE[32][Integer.bitCount(redKings)] + rank(redKings);
+        return index * 2 + (sideToMove > 0 ? 0 : 1);
+    }
+
+    // colexicographic rank of a set of squares among all sets of the same size
+    static int rank(int squares) {
+        int rank = 0;
+        int k = 1;
+        for (int rest = squares; rest != 0; rest &= rest - 1) {
+            rank += CHOOSE[Integer.numberOfTrailingZeros(rest)][k++];
+        }
+        return rank;
+    }
+
+    // set of k squares with the given rank, the inverse of rank
+    static int unrank(int rank, int k) {
+        int squares = 0;
+        for (; k > 0; k--) {
+            int s = k - 1;
+            while (CHOOSE[s + 1][k] <= rank) {
+                s++;
+            }
+            rank -= CHOOSE[s][k];
+            squares |= 1 << s;
+        }
+        return squares;
+    }
+
+    static int choose(int n, int k) {
+        return CHOOSE[n][k];
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+// Builds the endgame databases read by EndgameDatabase with retrograde analysis.
+// Slices are solved from the fewest pieces up, so every capture or promotion
+// leads into a slice that is already solved. Inside a slice the moves that
+// stay in it are quiet moves without promotion, which can be unmade. A first
+// pass over all cores looks every position's moves up in the solved slices
+// and counts those that stay in the slice. The positions are then resolved in
+// order of their distance to the end of the game: from each one resolved at
+// distance d the moves are unmade, and a position before it wins at d + 1 if it
+// lost, or has one fewer move left to be refuted if it won. A position that has
+// all its moves refuted loses. Whatever is never resolved is a draw
+//
+// From the repository root:
+//   javac -d out *.java
+//   java -cp out EndgameGenerator [max pieces] [directory]
+public class EndgameGenerator {
+    // positions handed to a thread at a time
+    private static final int CHUNK = 4096;
+    // neighbouring square in each direction (down right, down left, up right,
+    // up left), -1 off the board. Black men move down, red men up
+    private static final int[][] NEIGHBOR = new int[4][32];
+
+    static {
+        int[] yDir = {1, 1, -1, -1};
+        int[] xDir = {1, -1, 1, -1};
+        for (int d = 0; d < 4; d++) {
+            for (int s = 0; s < 32; s++) {
+                int row = ProtoBoard.rowOf(s) + yDir[d];
+                int col = ProtoBoard.colOf(s) + xDir[d];
+                NEIGHBOR[d][s] = Board.inBounds(row, col) ? ProtoBoard.squareOf(row, col) : -1;
+            }
+        }
+    }
+
+    private final Path directory;
+    // values of the slices solved so far, by slice key
+    private final HashMap<Integer, byte[]> values = new HashMap<>();
+
+    // positions of one distance waiting to be resolved
+    private static final class IntList {
+        int[] items = new int[16];
+        int size;
+
+        void add(int item) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+    }
+
+    public EndgameGenerator(Path directory) {
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxPieces = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        Path directory = Paths.get(args.length > 1 ? args[1] : "endgame");
+        Files.createDirectories(directory);
+        new EndgameGenerator(directory).generate(maxPieces);
+    }
+
+    // solves and writes every slice with at most maxPieces pieces
+    public void generate(int maxPieces) throws IOException {
+        ArrayList<int[]> slices = new ArrayList<>();
+        for (int blackMen = 0; blackMen < maxPieces; blackMen++) {
+            for (int blackKings = 0; blackMen + blackKings < maxPieces; blackKings++) {
+                for (int redMen = 0; blackMen + blackKings + redMen <= maxPieces; redMen++) {
+                    for (int redKings = 0; blackMen + blackKings + redMen + redKings <= maxPieces; redKings++) {
+                        // a side without pieces has lost, there is nothing to store
+                        if (blackMen + blackKings > 0 && redMen + redKings > 0)
+                            slices.add(new int[]{blackMen, blackKings, redMen, redKings});
+                    }
+                }
+            }
+        }
+        // captures remove pieces and promotions remove men, so solving by number
+        // of pieces and then by number of men solves every successor slice first
+        slices.sort(Comparator.<int[]>comparingInt(s -> s[0] + s[1] + s[2] + s[3])
+                .thenComparingInt(s -> s[0] + s[2]));
+        for (int[] slice : slices) {
+            solve(slice[0], slice[1], slice[2], slice[3]);
+        }
+    }
+
+    private void solve(int blackMen, int blackKings, int redMen, int redKings) throws IOException {
+        long start = System.currentTimeMillis();
+        int size = EndgameDatabase.size(blackMen, blackKings, redMen, redKings);
+        byte[] slice = new byte[size];
+        values.put(EndgameDatabase.sliceKey(blackMen, blackKings, redMen, redKings), slice);
+        // moves of each position that stay in the slice and have not been refuted
+        byte[] remaining = new byte[size];
+        // what the best move out of the slice does for each position
+        //    w > 0     wins in w plies
+        //    0         draws, or the index is not a position
+        //   -(l + 1)   loses in l plies at the latest
+        byte[] outcomes = new byte[size];
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel()
+                .forEach(chunk -> lookUpMoves(remaining, outcomes, blackMen, blackKings, redMen, redKings, chunk));
+
+        // positions to resolve by distance, found to win or to lose
+        ArrayList<IntList> wins = new ArrayList<>();
+        ArrayList<IntList> losses = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (outcomes[i] > 0)
+                schedule(wins, outcomes[i], i);
+            else if (outcomes[i] < 0 && remaining[i] == 0)
+                schedule(losses, -outcomes[i] - 1, i);
+        }
+
+        ProtoBoard protoBoard = new ProtoBoard();
+        int[] moves = new int[ProtoBoard.MAX_MOVES];
+        IntList resolved = new IntList();
+        int distance = 0;
+        for (; distance < Math.max(wins.size(), losses.size()); distance++) {
+            int stored = Math.min(distance, EndgameDatabase.MAX_DISTANCE) + 1;
+            resolved.size = 0;
+            resolve(slice, wins, distance, (byte) stored, resolved);
+            resolve(slice, losses, distance, (byte) -stored, resolved);
+            for (int r = 0; r < resolved.size; r++) {
+                int i = resolved.items[r];
+                boolean lost = slice[i] < 0;
+                decode(protoBoard, i, blackMen, blackKings, redMen, redKings);
+                int color = protoBoard.getSideToMove();
+                int black = protoBoard.getBlack();
+                int red = protoBoard.getRed();
+                int kings = protoBoard.getKings();
+                // the side that moved into the position
+                int moved = color > 0 ? red : black;
+                for (int pieces = moved; pieces != 0; pieces &= pieces - 1) {
+                    int to = Integer.numberOfTrailingZeros(pieces);
+                    boolean king = (kings & (1 << to)) != 0;
+                    for (int d = 0; d < 4; d++) {
+                        // men only came from behind them
+                        if (!king && (d < 2) == (color < 0))
+                            continue;
+                        int from = NEIGHBOR[d][to];
+                        if (from < 0 || ((black | red) & (1 << from)) != 0)
+                            continue;
+                        int bits = (1 << from) | (1 << to);
+                        int previousBlack = color > 0 ? black : black ^ bits;
+                        int previousRed = color > 0 ? red ^ bits : red;
+                        int previousKings = king ? kings ^ bits : kings;
+                        int previous = EndgameDatabase.index(previousBlack, previousRed, previousKings, -color);
+                        if (slice[previous] != 0)
+                            continue;
+                        // the move was only legal if there was nothing to capture
+                        protoBoard.setPosition(previousBlack, previousRed, previousKings, -color);
+                        int count = protoBoard.generateMoves(-color, moves);
+                        if (count > 0 && PackedMove.isCapture(moves[0]))
+                            continue;
+                        if (lost)
+                            schedule(wins, distance + 1, previous);
+                        else if (--remaining[previous] == 0 && outcomes[previous] < 0)
+                            schedule(losses, Math.max(distance + 1, -outcomes[previous] - 1), previous);
+                    }
+                }
+            }
+        }
+
+        int wonCount = 0;
+        int lostCount = 0;
+        for (byte value : slice) {
+            if (value > 0)
+                wonCount++;
+            else if (value < 0)
+                lostCount++;
+        }
+        write(slice, blackMen, blackKings, redMen, redKings);
+        System.out.printf("%s %10d positions %10d wins %10d losses %4d plies %8d ms%n",
+                name(blackMen, blackKings, redMen, redKings), size, wonCount, lostCount, distance,
+                System.currentTimeMillis() - start);
+    }
+
+    private static void schedule(ArrayList<IntList> lists, int distance, int i) {
+        while (lists.size() <= distance) {
+            lists.add(new IntList());
+        }
+        lists.get(distance).add(i);
+    }
+
+    // gives the positions of a distance that are still unresolved their value
+    // and adds them to resolved
+    private static void resolve(byte[] slice, ArrayList<IntList> lists, int distance, byte value, IntList resolved) {
+        if (distance >= lists.size())
+            return;
+        IntList list = lists.get(distance);
+        for (int k = 0; k < list.size; k++) {
+            int i = list.items[k];
+            if (slice[i] == 0) {
+                slice[i] = value;
+                resolved.add(i);
+            }
+        }
+        // not needed again
+        lists.set(distance, null);
+    }
+
+    // sets up the position with index i, false if its pieces share a square
+    private static boolean decode(ProtoBoard protoBoard, int i, int blackMen, int blackKings, int redMen, int redKings) {
+        // undo EndgameDatabase.index
+        int redMenPositions = EndgameDatabase.choose(28, redMen);
+        int blackKingPositions = EndgameDatabase.choose(32, blackKings);
+        int redKingPositions = EndgameDatabase.choose(32, redKings);
+        int color = (i & 1) == 0 ? 1 : -1;
+        int rest = i >>> 1;
+        int redKingSquares = EndgameDatabase.unrank(rest % redKingPositions, redKings);
+        rest /= redKingPositions;
+        int blackKingSquares = EndgameDatabase.unrank(rest % blackKingPositions, blackKings);
+        rest /= blackKingPositions;
+        int redMenSquares = EndgameDatabase.unrank(rest % redMenPositions, redMen) << 4;
+        int blackMenSquares = EndgameDatabase.unrank(rest / redMenPositions, blackMen);
+        int occupied = blackMenSquares | redMenSquares | blackKingSquares | redKingSquares;
+        if (Integer.bitCount(occupied) != blackMen + blackKings + redMen + redKings)
+            return false;
+        protoBoard.setPosition(blackMenSquares | blackKingSquares, redMenSquares | redKingSquares,
+                blackKingSquares | redKingSquares, color);
+        return true;
+    }
+
+    // looks up the moves of the positions of a chunk that leave the slice,
+    // which are solved already, and counts those that stay in it
+    private void lookUpMoves(byte[] remaining, byte[] outcomes, int blackMen, int blackKings, int redMen,
+                             int redKings, int chunk) {
+        ProtoBoard protoBoard = new ProtoBoard();
+        int[] moves = new int[ProtoBoard.MAX_MOVES];
+        int key = EndgameDatabase.sliceKey(blackMen, blackKings, redMen, redKings);
+        int end = Math.min(remaining.length, (chunk + 1) * CHUNK);
+        for (int i = chunk * CHUNK; i < end; i++) {
+            // skip indices where pieces share a square
+            if (!decode(protoBoard, i, blackMen, blackKings, redMen, redKings))
+                continue;
+            int color = protoBoard.getSideToMove();
+            int count = protoBoard.generateMoves(color, moves);
+            int inside = 0;
+            int win = Integer.MAX_VALUE;
+            boolean draw = false;
+            // no legal moves loses right away
+            int loss = 0;
+            for (int m = 0; m < count; m++) {
+                protoBoard.makeMove(moves[m]);
+                boolean stays = EndgameDatabase.sliceKey(protoBoard.getBlack(), protoBoard.getRed(),
+                        protoBoard.getKings()) == key;
+                int value = stays ? 0 : lookup(protoBoard);
+                protoBoard.unmakeMove();
+                if (stays)
+                    inside++;
+                // the opponent loses in -value - 1 plies
+                else if (value < 0)
+                    win = Math.min(win, -value);
+                else if (value == 0)
+                    draw = true;
+                else
+                    loss = Math.max(loss, value);
+            }
+            remaining[i] = (byte) inside;
+            if (win != Integer.MAX_VALUE)
+                outcomes[i] = (byte) win;
+            else if (!draw)
+                outcomes[i] = (byte) -(loss + 1);
+        }
+    }
+
+    // value of the position after a move, for the side that is now to move
+    private int lookup(ProtoBoard protoBoard) {
+        int black = protoBoard.getBlack();
+        int red = protoBoard.getRed();
+        int kings = protoBoard.getKings();
+        int color = protoBoard.getSideToMove();
+        // everything was captured
+        if ((color > 0 ? black : red) == 0)
+            return -1;
+        byte[] slice = values.get(EndgameDatabase.sliceKey(black, red, kings));
+        return slice[EndgameDatabase.index(black, red, kings, color)];
+    }
+
+    private void write(byte[] slice, int blackMen, int blackKings, int redMen, int redKings) throws IOException {
+        Path file = directory.resolve(name(blackMen, blackKings, redMen, redKings) + EndgameDatabase.EXTENSION);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(EndgameDatabase.MAGIC);
+            out.writeInt(EndgameDatabase.VERSION);
+            out.writeByte(blackMen);
+            out.writeByte(blackKings);
+            out.writeByte(redMen);
+            out.writeByte(redKings);
+            out.writeInt(slice.length);
+            out.write(slice);
+        }
+    }
+
+    // file name of a slice, the piece counts in the order of the header
+    private static String name(int blackMen, int blackKings, int redMen, int redKings) {
+        return "" + blackMen + blackKings + redMen + redKings;
+    }
+}
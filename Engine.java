@@ -1,148 +1,458 @@
 import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // Engine plays the move
 
 public class Engine {
+    // deepest iteration a search may start
+    public static final int MAX_DEPTH = 32;
+    // games are assumed to last this many more moves when splitting the clock
+    private static final int MOVES_TO_GO = 30;
+    // iterations with the same best move after which the search may stop early
+    private static final int STABLE_ITERATIONS = 4;
+    // default size of the transposition table in megabytes
+    private static final int DEFAULT_TT_MEGABYTES = 64;
+    // plies from the horizon below which YBWC no longer splits nodes by default
+    private static final int DEFAULT_SPLIT_DEPTH = 5;
+    // score of a won endgame database position, less the plies until the win
+    // below the scores of wins the search sees itself, above any material score
+    static final int DATABASE_WIN = 500000;
     // stores computer's evaluation of the position
     private int eval;
     // stores best move in the position
     private AbstractMove bestMove;
-    // stores a hash map with a large amount of previously visited positions
-    private final LinkedHashMap<BitSet, TTEntry> transpositionTable;
+    // best root moves of the last search with their scores and lines, best first
+    private List<PrincipalVariation> principalVariations = Collections.emptyList();
+    // stores a large amount of previously visited positions, shared by all threads
+    private final TranspositionTable transpositionTable;
+    // one searcher per thread, searchers[0] runs on the calling thread
+    private Searcher[] searchers;
+    // runs the helper searchers, null when searching with a single thread
+    private ExecutorService helperPool;
+    // how the threads of a search share the work
+    public enum ParallelMode { LAZY_SMP, YBWC }
+    private ParallelMode parallelMode = ParallelMode.LAZY_SMP;
+    private int splitDepth = DEFAULT_SPLIT_DEPTH;
+    private boolean deterministic;
+    // the search of YBWC mode, created on first use
+    private YbwcSearch ybwcSearch;
+    // runs the searches started by searchAsync, created on first use
+    private ExecutorService searchThread;
+    // future of the search running on searchThread, polled so cancelling it stops the search
+    private volatile Future<?> asyncSearch;
+    // endgame databases probed by the search, null if there are none
+    private volatile EndgameDatabase endgameDatabase;
+    // opening moves played without searching, null if there is no book
+    private volatile OpeningBook openingBook;
+    // which selective search techniques the searchers use
+    private volatile SearchOptions searchOptions = new SearchOptions();
+    // weights of the evaluation, set on the boards the engine searches
+    private volatile EvalWeights evalWeights = EvalWeights.DEFAULT;
+    // number of best root moves searched for exact scores and lines
+    private volatile int multiPv = 1;
+    // told about every completed iteration, null if nobody listens
+    private volatile IterationListener iterationListener;
+    // whether the last move came from the opening book
+    private boolean bookMove;
+    // legal moves of the root position
+    private final int[] rootMoves;
+    // deepest iteration completed and the counters of the last search
+    private int completedDepth;
+    private SearchStats stats = new SearchStats();
+    // time the search started and its limits
+    private long startTime;
+    private long softLimit;
+    private long hardLimit;
+    private long nodeLimit;
+    // set when the current search has to stop
+    private volatile boolean stopped;
 
     // initializes engine
     public Engine() {
+        this(DEFAULT_TT_MEGABYTES);
+    }
+
+    // initializes engine with a transposition table of the given size
+    public Engine(int ttMegabytes) {
+        this(new HeapTranspositionTable(ttMegabytes));
+    }
+
+    // initializes engine with the given transposition table, for example an
+    // OffHeapTranspositionTable larger than the heap or kept in a file
+    public Engine(TranspositionTable transpositionTable) {
         eval = Integer.MIN_VALUE;
         bestMove = null;
-        // transposition table hash map capped at 5 million entries
-        transpositionTable = new LinkedHashMap(){
-            protected boolean removeEldestEntry(Map.Entry eldest){
-                return size() > 5000000;
-            }
-        };
+        rootMoves = new int[ProtoBoard.MAX_MOVES];
+        this.transpositionTable = transpositionTable;
+        setThreads(1);
+    }
+
+    // sets the number of threads used by each search
+    public void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (helperPool != null)
+            helperPool.shutdownNow();
+        resetYbwcSearch();
+        searchers = new Searcher[threads];
+        for (int i = 0; i < threads; i++) {
+            searchers[i] = new Searcher(this, transpositionTable, i);
+        }
+        helperPool = null;
+        if (threads > 1) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "engine-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public ParallelMode getParallelMode() {
+        return parallelMode;
+    }
+
+    // lazy SMP runs a whole search on every thread, sharing only the table.
+    // YBWC splits the tree between the threads (see YbwcSearch)
+    public void setParallelMode(ParallelMode parallelMode) {
+        this.parallelMode = parallelMode;
+        resetYbwcSearch();
+    }
+
+    public int getSplitDepth() {
+        return splitDepth;
+    }
+
+    // plies from the horizon a node needs for YBWC to split it, fewer means
+    // more and smaller tasks
+    public void setSplitDepth(int splitDepth) {
+        this.splitDepth = splitDepth;
+        resetYbwcSearch();
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    // makes YBWC searches give the same results and node counts in every run,
+    // at the cost of speed, for reproducible benchmarks
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+        resetYbwcSearch();
+    }
+
+    private void resetYbwcSearch() {
+        if (ybwcSearch != null)
+            ybwcSearch.shutdown();
+        ybwcSearch = null;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    public int getThreads() {
+        return searchers.length;
+    }
+
+    public EndgameDatabase getEndgameDatabase() {
+        return endgameDatabase;
+    }
+
+    // positions with few enough pieces are then looked up instead of searched
+    public void setEndgameDatabase(EndgameDatabase endgameDatabase) {
+        this.endgameDatabase = endgameDatabase;
+    }
+
+    // forgets what earlier searches learned, like at the start of a new game
+    public void clear() {
+        transpositionTable.clear();
+        for (Searcher searcher : searchers) {
+            searcher.clearHistory();
+        }
+    }
+
+    public SearchOptions getSearchOptions() {
+        return searchOptions;
+    }
+
+    // takes effect with the next search
+    public void setSearchOptions(SearchOptions searchOptions) {
+        searchOptions.validate();
+        this.searchOptions = searchOptions;
+    }
+
+    public EvalWeights getEvalWeights() {
+        return evalWeights;
+    }
+
+    // takes effect with the next search
+    public void setEvalWeights(EvalWeights evalWeights) {
+        this.evalWeights = evalWeights;
+    }
+
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    // searches the given number of best root moves for exact scores and lines
+    // instead of only the best one, for analysis. Takes effect with the next search
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    // receives the result of every iteration the main searcher completes, on
+    // the searching thread, while the search goes on
+    public interface IterationListener {
+        void iterationComplete(int depth, List<PrincipalVariation> lines, long nodes, long millis);
+    }
+
+    public void setIterationListener(IterationListener iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
+
+    // positions in the book are then played right away instead of searched
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
     }
 
     // method determines best move
     // for given color at given depth at given position
     public void nextBestMove(ProtoBoard protoBoard, int color, int depth) {
+        nextBestMove(protoBoard, color, SearchLimits.depth(depth));
+    }
+
+    // method determines best move for given color at given position
+    // searching deeper and deeper until one of the limits is reached
+    public void nextBestMove(ProtoBoard protoBoard, int color, SearchLimits limits) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        try {
+            search(protoBoard, color, limits);
+        } finally {
+            stats.elapsedMillis = System.currentTimeMillis() - startTime;
+            if (event.shouldCommit()) {
+                event.threads = searchers.length;
+                event.depth = completedDepth;
+                event.bestMove = bestMove == null ? null : ProtoBoard.toNotation(ProtoBoard.encodeMove(bestMove));
+                event.eval = eval;
+                event.bookMove = bookMove;
+                event.nodes = stats.getNodes();
+                event.nodesPerSecond = stats.getNodesPerSecond();
+                event.leafEvaluations = stats.getLeafEvaluations();
+                event.ttProbes = stats.getTtProbes();
+                event.ttHitRate = stats.getTtHitRate();
+                event.ttOverwrites = stats.getTtOverwrites();
+                event.cutoffs = stats.getCutoffs();
+                event.firstMoveCutoffRate = stats.getFirstMoveCutoffRate();
+                event.databaseHits = stats.getDatabaseHits();
+                event.commit();
+            }
+        }
+    }
+
+    private void search(ProtoBoard protoBoard, int color, SearchLimits limits) {
+        startSearch(limits);
+        protoBoard.setEvalWeights(evalWeights);
+        // the side to move is part of the hash key
+        protoBoard.setSideToMove(color);
+        transpositionTable.newSearch();
         // generates all legal moves
-        ArrayList<AbstractMove> childMoves = protoBoard.generateLegalMoves(color);
+        int count = protoBoard.generateMoves(color, rootMoves);
 
         // executes move if there is only one legal move
-        if(childMoves.size() == 1){
-            bestMove = childMoves.get(0);
-        }
-        // goes through each move to decide the best
-        else {
-            eval = Integer.MIN_VALUE;
-            for (AbstractMove child : childMoves) {
-                protoBoard.makeMove(child);
-                int currentValue = -negamax(protoBoard, depth - 1, -Integer.MAX_VALUE, Integer.MAX_VALUE, -color);
-                if (currentValue > eval) {
-                    eval = currentValue;
-                    bestMove = child;
-                }
-                // if some moves are equally good, decide which to play by chance
-                else if (currentValue == eval){
-                    if((int) (Math.random()*3) > 1){
-                        bestMove = child;
-                    }
-                }
-                protoBoard.unmakeMove(child);
+        if(count <= 1){
+            bestMove = count == 1 ? ProtoBoard.toAbstractMove(rootMoves[0]) : null;
+            // not searched, so the score of the previous search must not stay,
+            // and without moves the game is lost
+            eval = count == 1 ? 0 : -1000000;
+            return;
+        }
+
+        // plays a book move without searching
+        OpeningBook book = openingBook;
+        if (book != null) {
+            int move = book.probe(protoBoard, rootMoves, count);
+            if (move != PackedMove.NONE) {
+                bookMove = true;
+                eval = 0;
+                bestMove = ProtoBoard.toAbstractMove(move);
+                return;
             }
         }
-    }
 
-    // recursive method implements negamax with alpha beta pruning and
-    // a transposition table
-    private int negamax(ProtoBoard protoBoard, int n, int a, int b, int color){
-        int alphaOrig = a;
-        // get the hash key of current position
-        BitSet key = protoBoard.getZobristHash();
-        TTEntry ttEntry = transpositionTable.get(key);
-        // check if position is in transposition table, and return
-        if((ttEntry != null && ttEntry.getDepth() >= n)
-                && (ttEntry.getDepth())%2 == n%2){
-            if(ttEntry.getFlag() == 0)
-                return ttEntry.getValue();
-            else if(ttEntry.getFlag() == -1)
-                a = Math.max(a, ttEntry.getValue());
-            else if(ttEntry.getFlag() == 1)
-                b = Math.min(b, ttEntry.getValue());
-            if (a >= b)
-                return ttEntry.getValue();
-        }
-
-        // generate legal moves
-        ArrayList<AbstractMove> legalMoves = protoBoard.generateLegalMoves(color);
-
-        // if recursion has finished, evaluate position and return
-        if (n == 0) {
-            return color * ((int) evaluatePosition(protoBoard));
-        }
-        // if there are no legal moves return an evaluation proportional to
-        // how far away that situation is
-        else if (legalMoves.isEmpty()){
-            return n * -1000000;
-        }
-
-        // set value to baseline 0
-        int value = Integer.MIN_VALUE;
-
-        // goes through each legal move and recurs
-        for (AbstractMove child : legalMoves) {
-            protoBoard.makeMove(child);
-            value = Math.max(value, -negamax(protoBoard, n - 1, -b, -a, -color));
-            a = Math.max(a, value);
-            protoBoard.unmakeMove(child);
-            if (a >= b) {
-                break;
+        // helpers search copies of the board next to the main searcher
+        ArrayList<Future<?>> helpers = new ArrayList<>();
+        boolean ybwc = parallelMode == ParallelMode.YBWC;
+        for (int i = 1; i < searchers.length && !ybwc; i++) {
+            Searcher helper = searchers[i];
+            helper.reset(new ProtoBoard(protoBoard), rootMoves, count);
+            helpers.add(helperPool.submit(() -> helper.search(color, limits.getMaxDepth())));
+        }
+        searchers[0].reset(protoBoard, rootMoves, count);
+        if (ybwc) {
+            if (ybwcSearch == null)
+                ybwcSearch = new YbwcSearch(this, transpositionTable, searchers.length, splitDepth, deterministic);
+            ybwcSearch.search(searchers[0], color, limits.getMaxDepth());
+        }
+        else
+            searchers[0].search(color, limits.getMaxDepth());
+        stopped = true;
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
             }
         }
 
-        // stores current position in transposition table
-        key = (BitSet) key.clone();
-        ttEntry = new TTEntry(value, (short) n);
-        if(value <= alphaOrig)
-            ttEntry.setFlag((short) 1);
-        else if(value >= b){
-            ttEntry.setFlag((short) -1);
+        // play the move of the deepest completed iteration of any thread
+        Searcher best = searchers[0];
+        SearchStats total = new SearchStats();
+        // in YBWC mode the helpers did not search, the tasks' searchers did
+        for (int i = 0; i < (ybwc ? 1 : searchers.length); i++) {
+            total.add(searchers[i].getStats());
+            if (searchers[i].getCompletedDepth() > best.getCompletedDepth())
+                best = searchers[i];
         }
+        if (ybwc)
+            total.add(ybwcSearch.getStats());
+        // iterations are those of the main searcher, which enforces the limits
+        total.setIterations(searchers[0].getStats());
+        stats = total;
+        completedDepth = best.getCompletedDepth();
+        eval = best.getEval();
+        principalVariations = Collections.unmodifiableList(Arrays.asList(best.getLines()));
+        // stopped before the first iteration was complete, any legal move will do
+        if (best.getBestMove() == PackedMove.NONE)
+            bestMove = ProtoBoard.toAbstractMove(rootMoves[0]);
         else
-            ttEntry.setFlag((short) 0);
-        transpositionTable.put(key, ttEntry);
-
-        return value;
-    }
-
-    // evaluates position based solely on material
-    private double evaluatePosition(ProtoBoard protoBoard) {
-        int value = 0;
-        // positive if black is winning. negative if red is winning.
-        for (int i = 0; i < Board.rows; i++) {
-            for (int j = 1 - (i % 2); j < Board.cols; j += 2) {
-                double pieceValue = protoBoard.getSquare(i, j);
-
-                // checks piece exists
-                if(pieceValue != 0) {
-                    // checks piece is regular piece
-                    if (Math.abs(pieceValue) == 2) {
-                        // checks piece is in the center and adjusts value
-                        if ((i == 3 && j == 2) || (i == 4 && j == 5)) {
-                            pieceValue *= 1.2;
-                        } else if ((i == 3 && j == 4) || (i == 4 && j == 3)) {
-                            pieceValue *= 1.1;
-                        }
-
-                    }
-                }
-                value += (int) pieceValue;
+            bestMove = ProtoBoard.toAbstractMove(best.getBestMove());
+    }
+
+    // searches for the best move on the engine's own thread
+    // the board is copied, so the caller may keep using it during the search
+    // cancelling the returned future stops the search as soon as possible
+    public CompletableFuture<AbstractMove> searchAsync(ProtoBoard protoBoard, int color, SearchLimits limits) {
+        ProtoBoard copy = new ProtoBoard(protoBoard);
+        CompletableFuture<AbstractMove> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (searchThread == null) {
+                searchThread = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "engine-search");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        searchThread.execute(() -> {
+            // cancelled before it got to run
+            if (future.isDone())
+                return;
+            asyncSearch = future;
+            try {
+                nextBestMove(copy, color, limits);
+                future.complete(bestMove);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                asyncSearch = null;
             }
+        });
+        return future;
+    }
+
+    // stops the running search, which then returns the best move found so far
+    public void stop() {
+        stopped = true;
+    }
+
+    // resets the search state and turns the limits into time limits for this move
+    private void startSearch(SearchLimits limits) {
+        startTime = System.currentTimeMillis();
+        bookMove = false;
+        principalVariations = Collections.emptyList();
+        stats = new SearchStats();
+        nodeLimit = limits.getNodeLimit() > 0 ? limits.getNodeLimit() : Long.MAX_VALUE;
+        stopped = false;
+        completedDepth = 0;
+        softLimit = Long.MAX_VALUE;
+        hardLimit = Long.MAX_VALUE;
+        if (limits.getMoveTime() > 0) {
+            softLimit = limits.getMoveTime() / 2;
+            hardLimit = limits.getMoveTime();
+        }
+        if (limits.getTimeLeft() > 0) {
+            long budget = limits.getTimeLeft() / MOVES_TO_GO + limits.getIncrement() * 3 / 4;
+            softLimit = Math.min(softLimit, budget);
+            hardLimit = Math.min(hardLimit, Math.min(budget * 4, limits.getTimeLeft() / 2));
+        }
+    }
+
+    // called by a searcher after each completed iteration
+    // returns whether it should start the next one
+    boolean continueSearch(Searcher searcher, int stableIterations) {
+        if (searcher.getId() != 0)
+            return !stopped;
+        long elapsed = System.currentTimeMillis() - startTime;
+        IterationListener listener = iterationListener;
+        if (listener != null)
+            listener.iterationComplete(searcher.getCompletedDepth(), Arrays.asList(searcher.getLines()),
+                    countNodes(), elapsed);
+        // do not start an iteration that will most likely not finish in time
+        return elapsed < softLimit
+                && !(stableIterations >= STABLE_ITERATIONS && elapsed >= softLimit / 3);
+    }
+
+    // called by searchers every few nodes, returns whether they have to stop
+    // the main searcher stops right away when its async search was cancelled
+    // and enforces the limits once its first iteration is complete
+    boolean shouldStop(Searcher searcher) {
+        if (stopped || searcher.getId() != 0)
+            return stopped;
+        Future<?> search = asyncSearch;
+        if (search != null && search.isCancelled()) {
+            stopped = true;
+        }
+        else if (searcher.getCompletedDepth() > 0) {
+            if (countNodes() >= nodeLimit || System.currentTimeMillis() - startTime >= hardLimit)
+                stopped = true;
+        }
+        return stopped;
+    }
+
+    // nodes searched so far by all threads of the current search
+    private long countNodes() {
+        long totalNodes = searchers[0].getNodes();
+        if (parallelMode == ParallelMode.YBWC && ybwcSearch != null)
+            return totalNodes + ybwcSearch.countNodes();
+        for (int i = 1; i < searchers.length; i++) {
+            totalNodes += searchers[i].getNodes();
         }
-        return value;
+        return totalNodes;
+    }
+
+    // evaluates position on material, with men and kings worth what the
+    // board's EvalWeights say on their squares
+    // the board keeps the score up to date as moves are made, run with -ea to
+    // check it against a full recompute at every leaf
+    int evaluatePosition(ProtoBoard protoBoard) {
+        assert protoBoard.getEvaluation() == protoBoard.computeEvaluation()
+                : "incremental evaluation " + protoBoard.getEvaluation()
+                + " differs from " + protoBoard.computeEvaluation();
+        return protoBoard.getEvaluation();
     }
 
     public int getEval() {
@@ -152,4 +462,28 @@ public class Engine {
     public AbstractMove getBestMove() {
         return bestMove;
     }
+
+    // best root moves of the last search, ranked by score, with the lines the
+    // search expects after them. Holds getMultiPv() moves at most, and none when
+    // the move was forced, came from the book or no iteration completed
+    public List<PrincipalVariation> getPrincipalVariations() {
+        return principalVariations;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public long getNodes() {
+        return stats.getNodes();
+    }
+
+    // counters of the last search, summed over all threads
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    public boolean isBookMove() {
+        return bookMove;
+    }
 }
@@ -0,0 +1,381 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Headless engine that speaks a line protocol, for tournament managers and bots.
+// Without --port one session runs on standard input and output, with --port every
+// connection to that port on the loopback address is a session of its own.
+// Sessions are cheap: each one runs on a virtual thread where the JDK has them
+// and has an engine with a small transposition table. Their searches share a
+// fixed pool of search threads, so many games can be played at once without the
+// searches fighting over the cores
+//
+// Commands, one per line:
+//   hello                    answers with the engine name and options, then "hellook"
+//   isready                  answers "readyok"
+//   setoption name <Hash|MultiPV> value <n>
+//   newgame                  forgets what was searched in the previous game
+//   position startpos|fen <fen> [moves <move> ...]
+//   go [depth <plies>] [movetime <ms>] [nodes <n>] [btime <ms> wtime <ms> binc <ms> winc <ms>] [infinite]
+//   stop                     ends the search, which then answers with its best move
+//                            an infinite search answers only after stop, even if it ends sooner
+//   quit
+// A search answers with a line for every completed iteration, like
+//   info depth 10 score 12 nodes 51234 nps 812000 time 63 pv 11-15 23-19 8-11
+// and ends with "bestmove <move>", or "bestmove none" without legal moves. Moves
+// are in checkers notation with squares numbered 1-32, scores are for the side
+// to move. Black moves first, btime and binc are black's clock and wtime and
+// winc red's (white in PDN). Commands that are not understood are answered with
+// "info string" and a message. A new position or search stops the one running
+//
+// From the repository root:
+//   javac -d out *.java
+//   java -cp out EngineServer [--port <port>] [--search-threads <n>] [--hash <mb>] [--max-hash <mb>]
+public class EngineServer {
+    private static final String START_FEN = "B:W21-32:B1-12";
+    // transposition table of a session unless it asks for another size
+    private static final int DEFAULT_HASH_MEGABYTES = 16;
+    private static final int DEFAULT_MAX_HASH_MEGABYTES = 1024;
+    // connections waiting to be accepted
+    private static final int BACKLOG = 50;
+    // how often a stopped search is told again until it ends
+    private static final long STOP_POLL_MILLIS = 10;
+
+    // runs the sessions, and the searches of all of them
+    private final ExecutorService sessions;
+    private final ExecutorService searchPool;
+    // transposition table size of new sessions and the most a session may ask for
+    private final int hash;
+    private final int maxHash;
+
+    public EngineServer(int searchThreads, int hash, int maxHash) {
+        this.maxHash = Math.max(1, maxHash);
+        this.hash = Math.max(1, Math.min(hash, this.maxHash));
+        sessions = newSessionExecutor();
+        searchPool = Executors.newFixedThreadPool(Math.max(1, searchThreads), runnable -> {
+            Thread thread = new Thread(runnable, "engine-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 0;
+        int searchThreads = Runtime.getRuntime().availableProcessors();
+        int hash = DEFAULT_HASH_MEGABYTES;
+        int maxHash = DEFAULT_MAX_HASH_MEGABYTES;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--search-threads": searchThreads = Integer.parseInt(args[i + 1]); break;
+                case "--hash": hash = Integer.parseInt(args[i + 1]); break;
+                case "--max-hash": maxHash = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown argument " + args[i]);
+            }
+        }
+        EngineServer server = new EngineServer(searchThreads, hash, maxHash);
+        try {
+            if (port > 0)
+                server.listen(port);
+            else
+                server.serve(System.in, System.out);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    // a virtual thread per session where the JDK has them (21 and later),
+    // looked up at run time so the engine still builds and runs on older ones
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "engine-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // accepts connections on the loopback address and runs a session for each
+    // of them, until the process ends
+    public void listen(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress())) {
+            System.out.println("listening on " + serverSocket.getLocalSocketAddress());
+            while (true) {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> {
+                    try (socket) {
+                        serve(socket.getInputStream(), socket.getOutputStream());
+                    } catch (IOException e) {
+                        // the other side went away, the session is over anyway
+                    }
+                });
+            }
+        }
+    }
+
+    // runs a session on the calling thread until quit or the end of the input
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        new Session(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))).run();
+    }
+
+    public void shutdown() {
+        sessions.shutdownNow();
+        searchPool.shutdownNow();
+    }
+
+    // one game or analysis client with its own engine and position
+    private final class Session {
+        private final BufferedReader in;
+        private final PrintWriter out;
+        // created on first use, and again when the table size changes
+        private Engine engine;
+        private int sessionHash = hash;
+        private int multiPv = 1;
+        private ProtoBoard position = ProtoBoard.fromFen(START_FEN);
+        // the search running or waiting for a search thread, null if there is none
+        private Future<?> search;
+        private volatile boolean stopRequested;
+        // answer of an infinite search that ended before it was stopped, sent by stopSearch
+        private volatile String heldAnswer;
+
+        Session(BufferedReader in, PrintWriter out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        void run() throws IOException {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] tokens = line.trim().split("\\s+");
+                    if (tokens[0].equals("quit"))
+                        break;
+                    try {
+                        handle(tokens);
+                    } catch (IllegalArgumentException e) {
+                        send("info string " + e.getMessage());
+                    }
+                }
+            } finally {
+                stopSearch();
+            }
+        }
+
+        private void handle(String[] tokens) {
+            switch (tokens[0]) {
+                case "":
+                    break;
+                case "hello":
+                    send("id name CheckersEngine");
+                    send("option name Hash type spin default " + sessionHash + " min 1 max " + maxHash);
+                    send("option name MultiPV type spin default 1 min 1 max " + ProtoBoard.MAX_MOVES);
+                    send("hellook");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "setoption":
+                    setOption(tokens);
+                    break;
+                case "newgame":
+                    stopSearch();
+                    if (engine != null)
+                        engine.clear();
+                    position = ProtoBoard.fromFen(START_FEN);
+                    break;
+                case "position":
+                    stopSearch();
+                    position = parsePosition(tokens);
+                    break;
+                case "go":
+                    stopSearch();
+                    go(parseLimits(tokens), Arrays.asList(tokens).contains("infinite"));
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown command " + tokens[0]);
+            }
+        }
+
+        private void setOption(String[] tokens) {
+            if (tokens.length != 5 || !tokens[1].equals("name") || !tokens[3].equals("value"))
+                throw new IllegalArgumentException("expected setoption name <name> value <value>");
+            int value = (int) Math.min(parseNumber(tokens[4]), Integer.MAX_VALUE);
+            switch (tokens[2]) {
+                case "Hash":
+                    stopSearch();
+                    // the budget of a session is bounded, so a client cannot take the server's memory
+                    sessionHash = Math.max(1, Math.min(value, maxHash));
+                    engine = null;
+                    break;
+                case "MultiPV":
+                    multiPv = Math.max(1, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + tokens[2]);
+            }
+        }
+
+        // the position of a position command, the current one stays if it is not valid
+        private ProtoBoard parsePosition(String[] tokens) {
+            int i = 1;
+            ProtoBoard protoBoard;
+            if (tokens.length > i && tokens[i].equals("startpos")) {
+                protoBoard = ProtoBoard.fromFen(START_FEN);
+                i++;
+            }
+            else if (tokens.length > i + 1 && tokens[i].equals("fen")) {
+                protoBoard = ProtoBoard.fromFen(tokens[i + 1]);
+                i += 2;
+            }
+            else
+                throw new IllegalArgumentException("expected position startpos or position fen <fen>");
+            if (tokens.length > i && !tokens[i].equals("moves"))
+                throw new IllegalArgumentException("expected moves after the position");
+            for (i++; i < tokens.length; i++) {
+                int move = protoBoard.parseMove(tokens[i], protoBoard.getSideToMove());
+                if (move == PackedMove.NONE)
+                    throw new IllegalArgumentException("illegal move " + tokens[i]);
+                // made on the board, so repetitions in the game are seen by the search
+                protoBoard.makeMove(move);
+            }
+            return protoBoard;
+        }
+
+        private SearchLimits parseLimits(String[] tokens) {
+            SearchLimits limits = new SearchLimits();
+            long blackTime = 0;
+            long redTime = 0;
+            long blackIncrement = 0;
+            long redIncrement = 0;
+            for (int i = 1; i < tokens.length; i++) {
+                if (tokens[i].equals("infinite"))
+                    continue;
+                if (i + 1 >= tokens.length)
+                    throw new IllegalArgumentException("missing value for " + tokens[i]);
+                long value = parseNumber(tokens[++i]);
+                switch (tokens[i - 1]) {
+                    case "depth": limits.setMaxDepth((int) Math.min(value, Engine.MAX_DEPTH)); break;
+                    case "movetime": limits.setMoveTime(value); break;
+                    case "nodes": limits.setNodeLimit(value); break;
+                    case "btime": blackTime = value; break;
+                    case "wtime": redTime = value; break;
+                    case "binc": blackIncrement = value; break;
+                    case "winc": redIncrement = value; break;
+                    default: throw new IllegalArgumentException("unknown limit " + tokens[i - 1]);
+                }
+            }
+            if (position.getSideToMove() > 0)
+                limits.setGameClock(blackTime, blackIncrement);
+            else
+                limits.setGameClock(redTime, redIncrement);
+            return limits;
+        }
+
+        private long parseNumber(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number: " + value);
+            }
+        }
+
+        // queues a search of the current position on the shared search threads
+        private void go(SearchLimits limits, boolean infinite) {
+            if (engine == null) {
+                engine = new Engine(sessionHash);
+                engine.setIterationListener(this::sendInfo);
+            }
+            Engine searching = engine;
+            searching.setMultiPv(multiPv);
+            ProtoBoard protoBoard = new ProtoBoard(position);
+            int color = protoBoard.getSideToMove();
+            stopRequested = false;
+            search = searchPool.submit(() -> {
+                String best = "none";
+                try {
+                    // stopped while it waited for a thread, a move is still owed
+                    searching.nextBestMove(protoBoard, color, stopRequested ? SearchLimits.depth(1) : limits);
+                    AbstractMove move = searching.getBestMove();
+                    if (move != null)
+                        best = ProtoBoard.toNotation(ProtoBoard.encodeMove(move));
+                } catch (RuntimeException e) {
+                    send("info string search failed: " + e);
+                }
+                // the search may end at the depth limit long before the client stops
+                // it, the answer then waits on the session and the thread is free
+                if (infinite && !stopRequested)
+                    heldAnswer = "bestmove " + best;
+                else
+                    send("bestmove " + best);
+            });
+        }
+
+        // stops the search if one is running or waiting and returns once it has
+        // answered with its best move
+        private void stopSearch() {
+            Future<?> running = search;
+            if (running == null)
+                return;
+            stopRequested = true;
+            // a stop that comes while the search is starting is forgotten, so it is repeated
+            while (!running.isDone()) {
+                engine.stop();
+                try {
+                    running.get(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // failures have been reported by the search itself
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            search = null;
+            // an infinite search that ended before the stop has held its answer
+            String held = heldAnswer;
+            heldAnswer = null;
+            if (held != null)
+                send(held);
+        }
+
+        private void sendInfo(int depth, List<PrincipalVariation> lines, long nodes, long millis) {
+            for (int k = 0; k < lines.size(); k++) {
+                PrincipalVariation line = lines.get(k);
+                send("info depth " + depth + (lines.size() > 1 ? " multipv " + (k + 1) : "")
+                        + " score " + line.getScore() + " nodes " + nodes
+                        + " nps " + nodes * 1000 / Math.max(1, millis) + " time " + millis + " pv " + line);
+            }
+        }
+
+        // lines come from the session and from its search, one at a time
+        private void send(String line) {
+            synchronized (out) {
+                out.println(line);
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+// Tunes the evaluation weights on positions labelled with the result of the
+// game they were played in (Texel's method). The evaluation of a position is
+// turned into an expected result with a logistic function, and the weights are
+// moved by gradient descent to minimize the mean squared difference between the
+// expected and the actual results. The evaluation is linear in the weights, so
+// the gradient is exact and cheap, and it is summed over all cores
+//
+// Input is one position per line, a FEN (see ProtoBoard.toFen) followed by the
+// result: 1-0 or 2-0 if black won, 0-1 or 0-2 if red won, 1/2-1/2 or 1-1 for a
+// draw, or black's score as a number between 0 and 1. Positions where the side
+// to move has a capture are skipped, their evaluation would be off by a piece.
+// MatchRunner --positions writes such files from self-play games
+//
+// From the repository root:
+//   javac -d out *.java
+//   java -cp out EvalTuner <positions> <weights> [--start <weights>] [--iterations <n>] [--rate <r>]
+// and then use the weights with Engine.setEvalWeights or MatchRunner --a-weights
+public class EvalTuner {
+    // positions per task of the parallel sums
+    private static final int CHUNK = 1 << 14;
+    // Adam's decay rates of the mean and variance of the gradient
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    // pieces of the positions and black's score in the game of each
+    private int[] black = new int[1024];
+    private int[] red = new int[1024];
+    private int[] kings = new int[1024];
+    private double[] results = new double[1024];
+    private int size;
+    // scale of the logistic function, fitted to the starting weights
+    private double scale;
+
+    public EvalTuner() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: EvalTuner <positions> <weights> [--start <weights>] [--iterations <n>] [--rate <r>]");
+            return;
+        }
+        EvalWeights start = EvalWeights.DEFAULT;
+        int iterations = 1000;
+        double rate = 0.5;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--start": start = EvalWeights.read(Paths.get(args[i + 1])); break;
+                case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                case "--rate": rate = Double.parseDouble(args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown argument " + args[i]);
+            }
+        }
+        EvalTuner tuner = new EvalTuner();
+        tuner.load(Paths.get(args[0]));
+        System.out.println(tuner.getSize() + " positions");
+        EvalWeights tuned = tuner.tune(start, iterations, rate);
+        tuned.write(Paths.get(args[1]));
+        System.out.print(tuned);
+    }
+
+    // adds the quiet positions of a file
+    public void load(Path file) throws IOException {
+        int[] moves = new int[ProtoBoard.MAX_MOVES];
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                int space = line.lastIndexOf(' ');
+                if (space < 0)
+                    throw new IllegalArgumentException("expected a position and a result: " + line);
+                ProtoBoard protoBoard = ProtoBoard.fromFen(line.substring(0, space));
+                double result = parseResult(line.substring(space + 1));
+                int count = protoBoard.generateMoves(protoBoard.getSideToMove(), moves);
+                if (count > 0 && PackedMove.isCapture(moves[0]))
+                    continue;
+                add(protoBoard.getBlack(), protoBoard.getRed(), protoBoard.getKings(), result);
+            }
+        }
+    }
+
+    // black's score for a result
+    public static double parseResult(String result) {
+        switch (result) {
+            case "1-0": case "2-0": return 1;
+            case "0-1": case "0-2": return 0;
+            case "1/2-1/2": case "1-1": return 0.5;
+            default:
+                double score = Double.parseDouble(result);
+                if (score < 0 || score > 1)
+                    throw new IllegalArgumentException("result out of range: " + result);
+                return score;
+        }
+    }
+
+    public void add(int black, int red, int kings, double result) {
+        if (size == results.length) {
+            this.black = Arrays.copyOf(this.black, size * 2);
+            this.red = Arrays.copyOf(this.red, size * 2);
+            this.kings = Arrays.copyOf(this.kings, size * 2);
+            results = Arrays.copyOf(results, size * 2);
+        }
+        this.black[size] = black;
+        this.red[size] = red;
+        this.kings[size] = kings;
+        results[size] = result;
+        size++;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // fits the scale to start and then runs the given number of gradient descent
+    // steps (Adam) with the given learning rate, in evaluation units per step
+    public EvalWeights tune(EvalWeights start, int iterations, double rate) {
+        double[] weights = new double[EvalWeights.SIZE];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = start.get(i);
+        }
+        scale = fitScale(weights);
+        double startError = error(weights, scale);
+        System.out.printf(Locale.ROOT, "scale %.5f, error %.6f%n", scale, startError);
+
+        double[] mean = new double[weights.length];
+        double[] variance = new double[weights.length];
+        for (int t = 1; t <= iterations; t++) {
+            double[] gradient = gradient(weights);
+            for (int i = 0; i < weights.length; i++) {
+                mean[i] = BETA1 * mean[i] + (1 - BETA1) * gradient[i];
+                variance[i] = BETA2 * variance[i] + (1 - BETA2) * gradient[i] * gradient[i];
+                double meanEstimate = mean[i] / (1 - Math.pow(BETA1, t));
+                double varianceEstimate = variance[i] / (1 - Math.pow(BETA2, t));
+                weights[i] -= rate * meanEstimate / (Math.sqrt(varianceEstimate) + EPSILON);
+            }
+            if (t % 100 == 0 || t == iterations)
+                System.out.printf(Locale.ROOT, "iteration %d, error %.6f%n", t, error(weights, scale));
+        }
+
+        int[] rounded = new int[weights.length];
+        double[] roundedWeights = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            rounded[i] = (int) Math.round(weights[i]);
+            roundedWeights[i] = rounded[i];
+        }
+        System.out.printf(Locale.ROOT, "error %.6f before, %.6f after%n", startError, error(roundedWeights, scale));
+        return new EvalWeights(rounded);
+    }
+
+    // scale of the logistic function that fits the results best to the evaluation
+    // with the given weights, found by a ternary search over a wide range
+    private double fitScale(double[] weights) {
+        double low = 0;
+        double high = 1;
+        for (int i = 0; i < 60; i++) {
+            double lowThird = low + (high - low) / 3;
+            double highThird = high - (high - low) / 3;
+            if (error(weights, lowThird) < error(weights, highThird))
+                high = highThird;
+            else
+                low = lowThird;
+        }
+        return (low + high) / 2;
+    }
+
+    // mean squared difference between the results and the expected results
+    public double error(double[] weights, double scale) {
+        double sum = IntStream.range(0, (size + CHUNK - 1) / CHUNK).parallel()
+                .mapToDouble(chunk -> {
+                    double chunkSum = 0;
+                    for (int p = chunk * CHUNK; p < Math.min(size, (chunk + 1) * CHUNK); p++) {
+                        double difference = results[p] - sigmoid(scale * evaluate(weights, p));
+                        chunkSum += difference * difference;
+                    }
+                    return chunkSum;
+                })
+                .sum();
+        return sum / Math.max(1, size);
+    }
+
+    // gradient of the error by every weight
+    private double[] gradient(double[] weights) {
+        return IntStream.range(0, (size + CHUNK - 1) / CHUNK).parallel()
+                .mapToObj(chunk -> {
+                    double[] chunkGradient = new double[weights.length];
+                    for (int p = chunk * CHUNK; p < Math.min(size, (chunk + 1) * CHUNK); p++) {
+                        double expected = sigmoid(scale * evaluate(weights, p));
+                        // derivative of the squared difference by the evaluation
+                        double slope = -2 * (results[p] - expected) * expected * (1 - expected) * scale / size;
+                        addFeatures(chunkGradient, p, slope);
+                    }
+                    return chunkGradient;
+                })
+                .reduce(new double[weights.length], (a, b) -> {
+                    double[] sum = new double[a.length];
+                    for (int i = 0; i < a.length; i++) {
+                        sum[i] = a[i] + b[i];
+                    }
+                    return sum;
+                });
+    }
+
+    // the evaluation of position p for black, as ProtoBoard computes it
+    private double evaluate(double[] weights, int p) {
+        double value = 0;
+        for (int rest = black[p]; rest != 0; rest &= rest - 1) {
+            int s = Integer.numberOfTrailingZeros(rest);
+            value += weights[((kings[p] & (1 << s)) != 0 ? EvalWeights.KING : EvalWeights.MAN) + s];
+        }
+        for (int rest = red[p]; rest != 0; rest &= rest - 1) {
+            int s = Integer.numberOfTrailingZeros(rest);
+            value -= weights[((kings[p] & (1 << s)) != 0 ? EvalWeights.KING : EvalWeights.MAN) + EvalWeights.mirror(s)];
+        }
+        return value;
+    }
+
+    // adds amount times the derivative of the evaluation of position p by every
+    // weight, which is how many more pieces black has on the weight's square
+    private void addFeatures(double[] gradient, int p, double amount) {
+        for (int rest = black[p]; rest != 0; rest &= rest - 1) {
+            int s = Integer.numberOfTrailingZeros(rest);
+            gradient[((kings[p] & (1 << s)) != 0 ? EvalWeights.KING : EvalWeights.MAN) + s] += amount;
+        }
+        for (int rest = red[p]; rest != 0; rest &= rest - 1) {
+            int s = Integer.numberOfTrailingZeros(rest);
+            gradient[((kings[p] & (1 << s)) != 0 ? EvalWeights.KING : EvalWeights.MAN) + EvalWeights.mirror(s)] -= amount;
+        }
+    }
+
+    private static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+}
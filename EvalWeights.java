@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Weights of ProtoBoard's evaluation: the value of a man and of a king on every
+// square, in the units of the evaluation where a man is worth about 20. Squares
+// are seen from the side of the piece's owner, so square 0 is on black's back
+// row for black pieces and on red's back row for red pieces, and both colors
+// share the same weights
+//
+// Written by EvalTuner as two lines of 32 values, "man ..." and "king ...",
+// squares in the order of ProtoBoard (row by row from black's side)
+public class EvalWeights {
+    public static final int SIZE = 64;
+    // offsets of the man and king values in the vector
+    public static final int MAN = 0;
+    public static final int KING = 32;
+
+    // the weights the engine was written with: men are worth 20, men on the
+    // four center squares a tenth or a fifth more, and kings 50 everywhere
+    public static final EvalWeights DEFAULT;
+
+    static {
+        int[] weights = new int[SIZE];
+        for (int s = 0; s < 32; s++) {
+            int row = ProtoBoard.rowOf(s);
+            int col = ProtoBoard.colOf(s);
+            int man = 20;
+            if ((row == 3 && col == 2) || (row == 4 && col == 5))
+                man = 24;
+            else if ((row == 3 && col == 4) || (row == 4 && col == 3))
+                man = 22;
+            weights[MAN + s] = man;
+            weights[KING + s] = 50;
+        }
+        DEFAULT = new EvalWeights(weights);
+    }
+
+    private final int[] weights;
+    // value of every piece index (see ProtoBoard.convertPieceValue) on every
+    // square, positive for black
+    private final int[][] pieceSquare = new int[4][32];
+
+    public EvalWeights(int[] weights) {
+        if (weights.length != SIZE)
+            throw new IllegalArgumentException("expected " + SIZE + " weights but got " + weights.length);
+        this.weights = weights.clone();
+        for (int s = 0; s < 32; s++) {
+            pieceSquare[0][s] = weights[MAN + s];
+            pieceSquare[1][s] = -weights[MAN + mirror(s)];
+            pieceSquare[2][s] = weights[KING + s];
+            pieceSquare[3][s] = -weights[KING + mirror(s)];
+        }
+    }
+
+    // the same square seen from the other side of the board
+    public static int mirror(int square) {
+        return 31 - square;
+    }
+
+    public int get(int index) {
+        return weights[index];
+    }
+
+    public int[] toArray() {
+        return weights.clone();
+    }
+
+    // table used by ProtoBoard, must not be changed
+    int[][] getPieceSquare() {
+        return pieceSquare;
+    }
+
+    // reads weights written by write
+    public static EvalWeights read(Path file) throws IOException {
+        int[] weights = new int[SIZE];
+        boolean[] found = new boolean[2];
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].isEmpty() || fields[0].startsWith("#"))
+                continue;
+            int offset;
+            if (fields[0].equals("man"))
+                offset = MAN;
+            else if (fields[0].equals("king"))
+                offset = KING;
+            else
+                throw new IOException(file + ": unknown weights " + fields[0]);
+            if (fields.length != 33)
+                throw new IOException(file + ": expected 32 " + fields[0] + " values");
+            try {
+                for (int s = 0; s < 32; s++) {
+                    weights[offset + s] = Integer.parseInt(fields[s + 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ": " + e.getMessage());
+            }
+            found[offset == MAN ? 0 : 1] = true;
+        }
+        if (!found[0] || !found[1])
+            throw new IOException(file + " does not hold man and king weights");
+        return new EvalWeights(weights);
+    }
+
+    public void write(Path file) throws IOException {
+        Files.write(file, toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EvalWeights && Arrays.equals(weights, ((EvalWeights) other).weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(weights);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("man");
+        for (int s = 0; s < 32; s++) {
+            builder.append(' ').append(weights[MAN + s]);
+        }
+        builder.append(System.lineSeparator()).append("king");
+        for (int s = 0; s < 32; s++) {
+            builder.append(' ').append(weights[KING + s]);
+        }
+        return builder.append(System.lineSeparator()).toString();
+    }
+}
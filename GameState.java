@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+// The position of a game played in the GUI with what the GUI asks about it.
+// The legal moves are generated once per position and side and kept until a
+// move or an edit changes the position, so highlighting the squares of a
+// piece, checking a click and finding out whether the game is over all read
+// the same list. Piece counts come from the bitboards, which ProtoBoard keeps
+// up to date as moves are made
+public class GameState {
+    private final ProtoBoard protoBoard;
+    // legal moves of cachedColor in the position with cachedHash, packed
+    private final int[] moves = new int[ProtoBoard.MAX_MOVES];
+    private int count;
+    private int cachedColor;
+    private long cachedHash;
+    private boolean valid;
+
+    public GameState() {
+        this(new ProtoBoard());
+    }
+
+    public GameState(ProtoBoard protoBoard) {
+        this.protoBoard = protoBoard;
+    }
+
+    public ProtoBoard getProtoBoard() {
+        return protoBoard;
+    }
+
+    public void setSquare(int row, int col, short piece) {
+        protoBoard.setSquare(row, col, piece);
+        valid = false;
+    }
+
+    public void makeMove(AbstractMove abstractMove) {
+        makeMove(ProtoBoard.encodeMove(abstractMove));
+    }
+
+    // makes a move packed by PackedMove
+    public void makeMove(int move) {
+        protoBoard.makeMove(move);
+        valid = false;
+    }
+
+    // generates the moves of color unless they are known for this position. The
+    // hash is checked as well, so changes made to the ProtoBoard directly are noticed
+    private void update(int color) {
+        if (valid && cachedColor == color && cachedHash == protoBoard.getZobristHash())
+            return;
+        count = protoBoard.generateMoves(color, moves);
+        cachedColor = color;
+        cachedHash = protoBoard.getZobristHash();
+        valid = true;
+    }
+
+    public int getLegalMoveCount(int color) {
+        update(color);
+        return count;
+    }
+
+    public boolean hasLegalMoves(int color) {
+        return getLegalMoveCount(color) > 0;
+    }
+
+    // the legal moves of color, packed
+    public int[] getLegalMoves(int color) {
+        update(color);
+        return Arrays.copyOf(moves, count);
+    }
+
+    // the legal move of color from (fromRow, fromCol) to (toRow, toCol), NONE if
+    // there is none. Of captures that end on the same square the first is taken
+    public int findMove(int fromRow, int fromCol, int toRow, int toCol, int color) {
+        // light squares share their index with a dark neighbour
+        if ((fromRow + fromCol) % 2 == 0 || (toRow + toCol) % 2 == 0)
+            return PackedMove.NONE;
+        update(color);
+        int from = ProtoBoard.squareOf(fromRow, fromCol);
+        int to = ProtoBoard.squareOf(toRow, toCol);
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.getFrom(moves[i]) == from && ProtoBoard.getTo(moves[i]) == to)
+                return moves[i];
+        }
+        return PackedMove.NONE;
+    }
+
+    // the squares the piece of color on (row, col) can move to, as ProtoBoard square indexes
+    public int[] getTargets(int row, int col, int color) {
+        update(color);
+        int from = ProtoBoard.squareOf(row, col);
+        int[] targets = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.getFrom(moves[i]) == from)
+                targets[size++] = ProtoBoard.getTo(moves[i]);
+        }
+        return Arrays.copyOf(targets, size);
+    }
+
+    public int getPieceCount(int color) {
+        return Integer.bitCount(color > 0 ? protoBoard.getBlack() : protoBoard.getRed());
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.Arrays;
+
+// Transposition table kept in a single long array on the heap
+public class HeapTranspositionTable extends TranspositionTable {
+    // a java array holds at most 2^31 - 1 longs
+    private static final long MAX_BUCKETS = 1L << 27;
+
+    private final long[] table;
+
+    // creates a table using at most the given number of megabytes
+    public HeapTranspositionTable(int megabytes) {
+        super(Math.min(buckets(megabytes), MAX_BUCKETS));
+        table = new long[(int) getBuckets() * BUCKET_LONGS];
+    }
+
+    @Override
+    long read(long index) {
+        return table[(int) index];
+    }
+
+    @Override
+    void write(long index, long value) {
+        table[(int) index] = value;
+    }
+
+    @Override
+    void clearEntries() {
+        Arrays.fill(table, 0);
+    }
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event committed by a searcher at the end of every completed
+// iteration, its duration is the time the iteration took. See SearchEvent
+@Name("checkers.Iteration")
+@Label("Search Iteration")
+@Category("Checkers")
+@Description("An iteration of the iterative deepening search")
+public class IterationEvent extends jdk.jfr.Event {
+    @Label("Searcher")
+    int searcher;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    int eval;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Effective Branching Factor")
+    double branchingFactor;
+}
@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Plays games between two engine configurations without the GUI until a
+// sequential probability ratio test (SPRT) decides whether A is stronger than B
+// or the game limit is reached. Every opening is played twice with the colors
+// swapped, and several games run at once, each engine searching with one thread
+//
+// From the repository root:
+//   javac -d out *.java
+//   java -cp out MatchRunner [options]
+//
+//   --a <changes>       search options of engine A, like "razoring=false,futilityMargin=20"
+//   --b <changes>       search options of engine B
+//   --a-weights <file>  evaluation weights of engine A, as written by EvalTuner
+//   --b-weights <file>  evaluation weights of engine B
+//   --time <ms>         time per move (default 100)
+//   --depth <plies>     fixed depth per move instead of time
+//   --games <n>         most games to play (default 20000)
+//   --concurrency <n>   games played at once (default all cores)
+//   --elo0 <elo> --elo1 <elo> --alpha <p> --beta <p>   SPRT bounds (default 0, 5, 0.05, 0.05)
+//   --seed <n>          seed of the opening order
+//   --positions <file>  writes the positions of every game with its result, for EvalTuner
+public class MatchRunner {
+    // plies of the openings and the largest shallow search score that counts as balanced
+    private static final int OPENING_PLIES = 3;
+    private static final int OPENING_DEPTH = 8;
+    private static final int BALANCED_SCORE = 10;
+    // a game is adjudicated once both engines agree for this many moves in a row
+    // that one side is ahead by WIN_SCORE or that the score is within DRAW_SCORE
+    private static final int ADJUDICATE_MOVES = 4;
+    private static final int WIN_SCORE = 60;
+    private static final int DRAW_SCORE = 2;
+    // draw adjudication starts after this many plies
+    private static final int DRAW_PLIES = 80;
+    // games without a result are drawn after this many plies
+    private static final int MAX_PLIES = 300;
+    private static final int TT_MEGABYTES = 16;
+
+    private final SearchOptions optionsA;
+    private final SearchOptions optionsB;
+    private final SearchLimits limits;
+    private EvalWeights weightsA = EvalWeights.DEFAULT;
+    private EvalWeights weightsB = EvalWeights.DEFAULT;
+    // where the positions of the games are written, null if they are not
+    private Writer positions;
+    // results from A's point of view
+    private int wins;
+    private int draws;
+    private int losses;
+    private final double lowerBound;
+    private final double upperBound;
+    private final double elo0;
+    private final double elo1;
+    // set once the test has decided
+    private volatile boolean finished;
+
+    public MatchRunner(SearchOptions optionsA, SearchOptions optionsB, SearchLimits limits,
+                       double elo0, double elo1, double alpha, double beta) {
+        this.optionsA = optionsA;
+        this.optionsB = optionsB;
+        this.limits = limits;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        String a = "";
+        String b = "";
+        SearchLimits limits = SearchLimits.moveTime(100);
+        int games = 20000;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        double elo0 = 0;
+        double elo1 = 5;
+        double alpha = 0.05;
+        double beta = 0.05;
+        long seed = 1;
+        EvalWeights weightsA = EvalWeights.DEFAULT;
+        EvalWeights weightsB = EvalWeights.DEFAULT;
+        String positions = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--a": a = value; break;
+                case "--b": b = value; break;
+                case "--time": limits = SearchLimits.moveTime(Long.parseLong(value)); break;
+                case "--depth": limits = SearchLimits.depth(Integer.parseInt(value)); break;
+                case "--games": games = Integer.parseInt(value); break;
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                case "--elo0": elo0 = Double.parseDouble(value); break;
+                case "--elo1": elo1 = Double.parseDouble(value); break;
+                case "--alpha": alpha = Double.parseDouble(value); break;
+                case "--beta": beta = Double.parseDouble(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--a-weights": weightsA = EvalWeights.read(Paths.get(value)); break;
+                case "--b-weights": weightsB = EvalWeights.read(Paths.get(value)); break;
+                case "--positions": positions = value; break;
+                default: throw new IllegalArgumentException("unknown argument " + args[i]);
+            }
+        }
+        MatchRunner runner = new MatchRunner(SearchOptions.parse(a), SearchOptions.parse(b), limits,
+                elo0, elo1, alpha, beta);
+        runner.setWeights(weightsA, weightsB);
+        if (positions == null) {
+            runner.run(openings(seed), games, concurrency);
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(Paths.get(positions), StandardCharsets.UTF_8)) {
+            runner.setPositions(out);
+            runner.run(openings(seed), games, concurrency);
+        }
+    }
+
+    public void setWeights(EvalWeights weightsA, EvalWeights weightsB) {
+        this.weightsA = weightsA;
+        this.weightsB = weightsB;
+    }
+
+    // every position of the games played from now on is written to positions,
+    // one per line as a FEN and black's result (1-0, 0-1 or 1/2-1/2)
+    public void setPositions(Writer positions) {
+        this.positions = positions;
+    }
+
+    // all balanced positions after OPENING_PLIES plies from the start, in random order
+    // each opening is a list of packed moves
+    public static ArrayList<int[]> openings(long seed) {
+        ArrayList<int[]> openings = new ArrayList<>();
+        collectOpenings(new ProtoBoard(), 1, new int[OPENING_PLIES], 0, new HashSet<>(), openings);
+        Collections.shuffle(openings, new Random(seed));
+        return openings;
+    }
+
+    private static void collectOpenings(ProtoBoard protoBoard, int color, int[] line, int ply,
+                                        HashSet<Long> seen, ArrayList<int[]> openings) {
+        protoBoard.setSideToMove(color);
+        if (ply == line.length) {
+            if (!seen.add(protoBoard.getZobristHash()))
+                return;
+            Engine engine = new Engine(1);
+            engine.nextBestMove(new ProtoBoard(protoBoard), color, OPENING_DEPTH);
+            if (Math.abs(engine.getEval()) <= BALANCED_SCORE)
+                openings.add(line.clone());
+            return;
+        }
+        int[] moves = new int[ProtoBoard.MAX_MOVES];
+        int count = protoBoard.generateMoves(color, moves);
+        for (int i = 0; i < count; i++) {
+            line[ply] = moves[i];
+            protoBoard.makeMove(moves[i]);
+            collectOpenings(protoBoard, -color, line, ply + 1, seen, openings);
+            protoBoard.unmakeMove();
+        }
+    }
+
+    // plays pairs of games over the openings until the SPRT decides or games have been played
+    public void run(ArrayList<int[]> openings, int games, int concurrency) throws InterruptedException {
+        System.out.printf(Locale.ROOT, "%d openings, SPRT elo0 %.1f elo1 %.1f, LLR bounds %.2f %.2f%n",
+                openings.size(), elo0, elo1, lowerBound, upperBound);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        for (int game = 0; game < games; game++) {
+            int[] opening = openings.get(game / 2 % openings.size());
+            // A plays black in the first game of a pair and red in the second
+            int colorA = game % 2 == 0 ? 1 : -1;
+            pool.execute(() -> {
+                if (finished)
+                    return;
+                ArrayList<String> fens = positions == null ? null : new ArrayList<>();
+                int result = play(opening, colorA, fens);
+                if (result != Integer.MIN_VALUE)
+                    record(result, colorA, fens);
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        report();
+    }
+
+    // plays one game and returns 1 if A won, -1 if B won, 0 for a draw and
+    // Integer.MIN_VALUE if the match finished before the game did
+    public int play(int[] opening, int colorA) {
+        return play(opening, colorA, null);
+    }
+
+    // plays one game like play, adding the FEN of every position played to fens if it is not null
+    private int play(int[] opening, int colorA, ArrayList<String> fens) {
+        Engine engineA = new Engine(TT_MEGABYTES);
+        Engine engineB = new Engine(TT_MEGABYTES);
+        engineA.setSearchOptions(optionsA);
+        engineB.setSearchOptions(optionsB);
+        engineA.setEvalWeights(weightsA);
+        engineB.setEvalWeights(weightsB);
+        ProtoBoard protoBoard = new ProtoBoard();
+        int color = 1;
+        for (int move : opening) {
+            protoBoard.makeMove(move);
+            color = -color;
+        }
+        int[] moves = new int[ProtoBoard.MAX_MOVES];
+        // moves in a row that both engines judged won for black or red, or drawn
+        int blackAhead = 0;
+        int redAhead = 0;
+        int level = 0;
+        for (int ply = opening.length; ply < MAX_PLIES; ply++) {
+            if (finished)
+                return Integer.MIN_VALUE;
+            // no legal moves loses, a repeated position draws
+            if (protoBoard.generateMoves(color, moves) == 0)
+                return color == colorA ? -1 : 1;
+            if (protoBoard.isRepetition())
+                return 0;
+            if (fens != null)
+                fens.add(protoBoard.toFen());
+            Engine engine = color == colorA ? engineA : engineB;
+            engine.nextBestMove(protoBoard, color, limits);
+            AbstractMove move = engine.getBestMove();
+
+            // a forced move has no score and keeps the counts as they are
+            if (engine.getCompletedDepth() > 0) {
+                int blackEval = color * engine.getEval();
+                blackAhead = blackEval >= WIN_SCORE ? blackAhead + 1 : 0;
+                redAhead = blackEval <= -WIN_SCORE ? redAhead + 1 : 0;
+                level = Math.abs(blackEval) <= DRAW_SCORE ? level + 1 : 0;
+            }
+            // counts are kept per side, so both engines have to agree
+            if (blackAhead >= 2 * ADJUDICATE_MOVES)
+                return colorA > 0 ? 1 : -1;
+            if (redAhead >= 2 * ADJUDICATE_MOVES)
+                return colorA < 0 ? 1 : -1;
+            if (level >= 2 * ADJUDICATE_MOVES && ply >= DRAW_PLIES)
+                return 0;
+            protoBoard.makeMove(ProtoBoard.encodeMove(move));
+            color = -color;
+        }
+        return 0;
+    }
+
+    private synchronized void record(int result, int colorA, ArrayList<String> fens) {
+        if (finished)
+            return;
+        if (fens != null) {
+            int blackResult = colorA > 0 ? result : -result;
+            String label = blackResult > 0 ? "1-0" : blackResult < 0 ? "0-1" : "1/2-1/2";
+            try {
+                for (String fen : fens) {
+                    positions.write(fen + " " + label + System.lineSeparator());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (result > 0)
+            wins++;
+        else if (result < 0)
+            losses++;
+        else
+            draws++;
+        double llr = llr();
+        if ((wins + draws + losses) % 10 == 0)
+            report();
+        if (llr <= lowerBound || llr >= upperBound)
+            finished = true;
+    }
+
+    // log likelihood ratio of elo1 against elo0 for the results so far,
+    // using the normal approximation of the score of a game
+    public synchronized double llr() {
+        int games = wins + draws + losses;
+        if (games == 0)
+            return 0;
+        double score = (wins + draws / 2.0) / games;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / games;
+        // all results the same, too few games to say anything
+        if (variance == 0)
+            return 0;
+        double score0 = expectedScore(elo0);
+        double score1 = expectedScore(elo1);
+        return (score1 - score0) * (2 * score - score0 - score1) / (2 * variance / games);
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private synchronized void report() {
+        int games = wins + draws + losses;
+        double score = games == 0 ? 0.5 : (wins + draws / 2.0) / games;
+        double elo = score <= 0 || score >= 1 ? Double.NaN : -400 * Math.log10(1 / score - 1);
+        double llr = llr();
+        String verdict = llr >= upperBound ? "H1 accepted, A is stronger"
+                : llr <= lowerBound ? "H0 accepted, A is not stronger" : "running";
+        System.out.printf(Locale.ROOT, "games %d  +%d -%d =%d  score %.3f  elo %+.1f  LLR %.2f  %s%n",
+                games, wins, losses, draws, score, elo, llr, verdict);
+    }
+
+    public synchronized int getWins() {
+        return wins;
+    }
+
+    public synchronized int getDraws() {
+        return draws;
+    }
+
+    public synchronized int getLosses() {
+        return losses;
+    }
+}
@@ -10,7 +10,6 @@ public class Move extends AbstractMove {
         this.col = col;
         this.yDir = yDir;
         this.xDir = xDir;
-        this.turnKingMove = -1;
     }
 
     public boolean getType(){
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Transposition table kept outside the heap, so it can be far larger than the
+// heap and costs the garbage collector nothing. A buffer holds at most 2GB, so
+// the table is split into segments of SEGMENT_BYTES
+//
+// A table opened on a file is memory mapped: what the searches store in it
+// survives the process, and several processes that open the same file share
+// it the way the threads of one engine do. Entries are checked against their
+// key, so a torn write by another process is only a miss
+//
+// File layout: a header of HEADER bytes holding MAGIC, VERSION,
+// ProtoBoard.ZOBRIST_SEED, the number of buckets and the generation of the
+// last search, followed by the buckets. Numbers are little endian
+public class OffHeapTranspositionTable extends TranspositionTable {
+    static final int MAGIC = 0x434B5454;
+    static final int VERSION = 1;
+    // a whole bucket, so the buckets that follow stay aligned to cache lines
+    static final int HEADER = BUCKET_BYTES;
+    // 1GB per buffer
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+    // longs per segment
+    private static final int SEGMENT_LONG_SHIFT = SEGMENT_SHIFT - 3;
+    private static final long SEGMENT_LONG_MASK = (1L << SEGMENT_LONG_SHIFT) - 1;
+
+    private final ByteBuffer[] segments;
+    // the mapped header, null if the table has no file
+    private final MappedByteBuffer header;
+
+    // creates a table in memory outside the heap using at most the given number of megabytes
+    public OffHeapTranspositionTable(long megabytes) {
+        super(buckets(megabytes));
+        long bytes = getBuckets() * BUCKET_BYTES;
+        segments = new ByteBuffer[(int) ((bytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect((int) Math.min(SEGMENT_BYTES, bytes - i * SEGMENT_BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        header = null;
+    }
+
+    private OffHeapTranspositionTable(long buckets, FileChannel channel) throws IOException {
+        super(buckets);
+        long bytes = buckets * BUCKET_BYTES;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        segments = new ByteBuffer[(int) ((bytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + i * SEGMENT_BYTES,
+                    Math.min(SEGMENT_BYTES, bytes - i * SEGMENT_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    // opens the table in file, or creates it with at most the given number of
+    // megabytes if the file does not exist or is empty. An existing table keeps
+    // its own size and contents
+    public static OffHeapTranspositionTable open(Path file, long megabytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // another process opening the file at the same time waits until it is set up
+            FileLock lock = channel.lock();
+            try {
+                // the mappings stay valid after the channel is closed
+                if (channel.size() == 0) {
+                    long buckets = buckets(megabytes);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(MAGIC).putInt(VERSION).putLong(ProtoBoard.ZOBRIST_SEED).putLong(buckets).putInt(0);
+                    header.clear();
+                    channel.write(header, 0);
+                    // sized up front so that the mapping does not grow the file piece by piece
+                    channel.write(ByteBuffer.allocate(1), HEADER + buckets * BUCKET_BYTES - 1);
+                    return new OffHeapTranspositionTable(buckets, channel);
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                if (channel.size() < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                    throw new IOException(file + " is not a transposition table");
+                // keys written with other zobrist keys would never match
+                if (header.getLong(8) != ProtoBoard.ZOBRIST_SEED)
+                    throw new IOException(file + " was written with different zobrist keys");
+                long buckets = header.getLong(16);
+                if (buckets <= 0 || Long.bitCount(buckets) != 1 || channel.size() != HEADER + buckets * BUCKET_BYTES)
+                    throw new IOException(file + " has the wrong size");
+                OffHeapTranspositionTable table = new OffHeapTranspositionTable(buckets, channel);
+                table.setGeneration(header.getInt(24));
+                return table;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    @Override
+    long read(long index) {
+        return segments[(int) (index >>> SEGMENT_LONG_SHIFT)].getLong((int) (index & SEGMENT_LONG_MASK) << 3);
+    }
+
+    @Override
+    void write(long index, long value) {
+        segments[(int) (index >>> SEGMENT_LONG_SHIFT)].putLong((int) (index & SEGMENT_LONG_MASK) << 3, value);
+    }
+
+    @Override
+    void clearEntries() {
+        for (ByteBuffer segment : segments) {
+            for (int i = 0; i < segment.capacity(); i += 8) {
+                segment.putLong(i, 0);
+            }
+        }
+    }
+
+    // the generation is kept in the file, so a process that opens it later
+    // knows which entries are old
+    @Override
+    protected void setGeneration(int generation) {
+        super.setGeneration(generation);
+        if (header != null)
+            header.putInt(24, getGeneration());
+    }
+
+    // writes the changes to a file backed table to disk, the operating system
+    // does so on its own as well, but only this call waits for it
+    public void force() {
+        if (header == null)
+            return;
+        header.force();
+        for (ByteBuffer segment : segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+    }
+
+    public boolean isPersistent() {
+        return header != null;
+    }
+}
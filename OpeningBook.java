@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Opening moves written by OpeningBookBuilder, looked up by zobrist hash.
+// The file is memory mapped and probed with a binary search, so a book of any
+// size opens instantly and costs no heap
+//
+// File layout: MAGIC, VERSION, ProtoBoard.ZOBRIST_SEED, the number of entries and
+// four bytes of padding, followed by the entries sorted by key. Each entry is the
+// zobrist hash of a position (side to move included), a packed move and the
+// move's weight. A position with several book moves has one entry per move
+public class OpeningBook {
+    static final int MAGIC = 0x434B424B;
+    static final int VERSION = 1;
+    static final int HEADER = 24;
+    static final int ENTRY = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+    // picks between book moves in proportion to their weights
+    private final Random random = new Random();
+
+    public OpeningBook(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (channel.size() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException(file + " is not an opening book");
+            // hashes of a book written with other zobrist keys would never match
+            if (buffer.getLong(8) != ProtoBoard.ZOBRIST_SEED)
+                throw new IOException(file + " was written with different zobrist keys");
+            entries = buffer.getInt(16);
+            if (channel.size() != HEADER + (long) entries * ENTRY)
+                throw new IOException(file + " has the wrong size");
+        }
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    // returns a book move for the position on protoBoard, or NONE if it is not in the book
+    // only moves found among the legal moves are played, which guards against hash collisions
+    public int probe(ProtoBoard protoBoard, int[] legalMoves, int count) {
+        long key = protoBoard.getZobristHash();
+        // first entry with a key that is not smaller than the position's
+        int low = 0;
+        int high = entries;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getKey(middle) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        int totalWeight = 0;
+        for (int i = low; i < entries && getKey(i) == key; i++) {
+            if (isLegal(getMove(i), legalMoves, count))
+                totalWeight += getWeight(i);
+        }
+        if (totalWeight <= 0)
+            return PackedMove.NONE;
+        int pick = random.nextInt(totalWeight);
+        for (int i = low; ; i++) {
+            if (!isLegal(getMove(i), legalMoves, count))
+                continue;
+            pick -= getWeight(i);
+            if (pick < 0)
+                return getMove(i);
+        }
+    }
+
+    private long getKey(int entry) {
+        return buffer.getLong(HEADER + entry * ENTRY);
+    }
+
+    private int getMove(int entry) {
+        return buffer.getInt(HEADER + entry * ENTRY + 8);
+    }
+
+    private int getWeight(int entry) {
+        return buffer.getInt(HEADER + entry * ENTRY + 12);
+    }
+
+    private static boolean isLegal(int move, int[] legalMoves, int count) {
+        for (int i = 0; i < count; i++) {
+            if (legalMoves[i] == move)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Writes the opening books read by OpeningBook, either by searching every
+// position of the first few plies deeply or from games in PDN files
+//
+// From the repository root:
+//   javac -d out *.java
+//   java -cp out OpeningBookBuilder search <book> [plies] [depth]
+//   java -cp out OpeningBookBuilder pdn <book> [plies] <game files...>
+//
+// Moves in the games use squares numbered 1-32 (see ProtoBoard.toNotation)
+// and the games start from the initial position with black to move
+public class OpeningBookBuilder {
+    // game results, some of them could be mistaken for moves
+    private static final Set<String> RESULTS = new HashSet<>(
+            Arrays.asList("1-0", "0-1", "2-0", "0-2", "1-1", "1/2-1/2", "*"));
+
+    // weight of every move, by position key and packed move
+    private final TreeMap<Long, TreeMap<Integer, Integer>> book = new TreeMap<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: OpeningBookBuilder search <book> [plies] [depth]");
+            System.out.println("       OpeningBookBuilder pdn <book> [plies] <game files...>");
+            return;
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        Path file = Paths.get(args[1]);
+        if (args[0].equals("search")) {
+            int plies = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+            int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+            builder.addSearchedMoves(plies, depth);
+        }
+        else if (args[0].equals("pdn")) {
+            int plies = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+            for (int i = 3; i < args.length; i++) {
+                builder.addGames(new String(Files.readAllBytes(Paths.get(args[i]))), plies);
+            }
+        }
+        else {
+            System.out.println("unknown mode " + args[0]);
+            return;
+        }
+        builder.write(file);
+    }
+
+    public void add(long key, int move, int weight) {
+        book.computeIfAbsent(key, k -> new TreeMap<>()).merge(move, weight, Integer::sum);
+    }
+
+    // searches every position of the first plies plies, with either side moving
+    // first, to the given depth and adds the best move of each
+    public void addSearchedMoves(int plies, int depth) {
+        Engine engine = new Engine();
+        HashSet<Long> searched = new HashSet<>();
+        for (int color = 1; color >= -1; color -= 2) {
+            ProtoBoard protoBoard = new ProtoBoard();
+            protoBoard.setSideToMove(color);
+            addSearchedMoves(engine, protoBoard, color, plies, depth, searched);
+        }
+    }
+
+    private void addSearchedMoves(Engine engine, ProtoBoard protoBoard, int color, int plies, int depth,
+                                  HashSet<Long> searched) {
+        if (plies == 0 || !searched.add(protoBoard.getZobristHash()))
+            return;
+        int[] moves = new int[ProtoBoard.MAX_MOVES];
+        int count = protoBoard.generateMoves(color, moves);
+        // a forced move needs no book
+        if (count > 1) {
+            engine.nextBestMove(new ProtoBoard(protoBoard), color, depth);
+            add(protoBoard.getZobristHash(), ProtoBoard.encodeMove(engine.getBestMove()), 1);
+            if (searched.size() % 100 == 0)
+                System.out.println(searched.size() + " positions searched");
+        }
+        for (int i = 0; i < count; i++) {
+            protoBoard.makeMove(moves[i]);
+            addSearchedMoves(engine, protoBoard, -color, plies - 1, depth, searched);
+            protoBoard.unmakeMove();
+        }
+    }
+
+    // adds the moves of the first plies plies of every game in a PDN text,
+    // each move played once more adds one to its weight
+    public void addGames(String pdn, int plies) {
+        // tags and comments carry no moves
+        pdn = pdn.replaceAll("\\[[^\\]]*\\]", " \n[tag] ").replaceAll("\\{[^}]*\\}", " ");
+        ProtoBoard protoBoard = null;
+        int color = 1;
+        int ply = 0;
+        int games = 0;
+        for (String token : pdn.split("\\s+")) {
+            token = token.replaceFirst("^\\d+\\.+", "");
+            boolean result = RESULTS.contains(token);
+            // a result or the tags of the next game end the current game
+            if (result || token.equals("[tag]")) {
+                protoBoard = null;
+                continue;
+            }
+            if (token.isEmpty() || !token.matches("\\d+([-x]\\d+)+"))
+                continue;
+            if (protoBoard == null) {
+                protoBoard = new ProtoBoard();
+                color = 1;
+                ply = 0;
+                games++;
+            }
+            // the rest of a game is skipped after an illegal move or the last book ply
+            if (ply < 0 || ply >= plies)
+                continue;
+            int move = protoBoard.parseMove(token, color);
+            if (move == PackedMove.NONE) {
+                System.out.println("game " + games + ": illegal move " + token);
+                ply = -1;
+                continue;
+            }
+            protoBoard.setSideToMove(color);
+            add(protoBoard.getZobristHash(), move, 1);
+            protoBoard.makeMove(move);
+            color = -color;
+            ply++;
+        }
+        System.out.println(games + " games read");
+    }
+
+    // writes the book sorted by key, as OpeningBook expects
+    public void write(Path file) throws IOException {
+        int entries = 0;
+        for (TreeMap<Integer, Integer> moves : book.values()) {
+            entries += moves.size();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeLong(ProtoBoard.ZOBRIST_SEED);
+            out.writeInt(entries);
+            out.writeInt(0);
+            for (Map.Entry<Long, TreeMap<Integer, Integer>> position : book.entrySet()) {
+                for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                    out.writeLong(position.getKey());
+                    out.writeInt(move.getKey());
+                    out.writeInt(move.getValue());
+                }
+            }
+        }
+        System.out.println(book.size() + " positions and " + entries + " moves written to " + file);
+    }
+}
@@ -0,0 +1,49 @@
+// A move packed into a single int so that move generation and search
+// never have to allocate. Squares are ProtoBoard square indexes (0-31) and
+// directions follow ProtoBoard's order: down-right, down-left, up-right, up-left
+//   bits 0-4  : square the piece starts on
+//   bits 5-8  : number of jumps, 0 for a quiet move
+//   bits 9-26 : direction of every step/jump, two bits each
+public class PackedMove {
+    // longest multi-jump that can be stored
+    public static final int MAX_JUMPS = 9;
+    // number of bits used by a packed move
+    public static final int BITS = 27;
+    // value that is never a legal move
+    public static final int NONE = (1 << BITS) - 1;
+
+    private static final int JUMPS_SHIFT = 5;
+    private static final int PATH_SHIFT = 9;
+
+    public static int quiet(int from, int dir) {
+        return from | (dir << PATH_SHIFT);
+    }
+
+    // starts a capture with no jumps yet
+    public static int capture(int from) {
+        return from;
+    }
+
+    // appends a jump in direction dir to a capture
+    public static int addJump(int move, int dir) {
+        int jumps = getJumps(move);
+        return (move + (1 << JUMPS_SHIFT)) | (dir << (PATH_SHIFT + 2 * jumps));
+    }
+
+    public static int getFrom(int move) {
+        return move & 31;
+    }
+
+    public static int getJumps(int move) {
+        return (move >>> JUMPS_SHIFT) & 15;
+    }
+
+    public static boolean isCapture(int move) {
+        return getJumps(move) != 0;
+    }
+
+    // direction of the i-th step (only i == 0 for a quiet move)
+    public static int getDirection(int move, int i) {
+        return (move >>> (PATH_SHIFT + 2 * i)) & 3;
+    }
+}
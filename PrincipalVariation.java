@@ -0,0 +1,58 @@
+import java.util.Arrays;
+
+// A root move with its score and the line of play the search expects to
+// follow it, as found by an iteration of the given depth. Moves are packed
+// (see PackedMove) and the score is for the side to move at the root
+public class PrincipalVariation {
+    private final int[] moves;
+    private final int score;
+    private final int depth;
+
+    public PrincipalVariation(int[] moves, int score, int depth) {
+        this.moves = moves.clone();
+        this.score = score;
+        this.depth = depth;
+    }
+
+    // the root move
+    public int getMove() {
+        return moves[0];
+    }
+
+    public int[] getMoves() {
+        return moves.clone();
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // the moves in notation, like "11-15 23-19 8-11"
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int move : moves) {
+            if (builder.length() > 0)
+                builder.append(' ');
+            builder.append(ProtoBoard.toNotation(move));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PrincipalVariation))
+            return false;
+        PrincipalVariation line = (PrincipalVariation) other;
+        return score == line.score && depth == line.depth && Arrays.equals(moves, line.moves);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(moves) * 31 + score;
+    }
+}
@@ -1,72 +1,314 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
+import java.util.Random;
 
+// Bitboard representation of the game board. The 32 dark squares are
+// numbered 0-31 row by row (index = row * 4 + col / 2) and every piece type
+// is kept as a 32-bit mask, so move generation is done with shifts and
+// precomputed tables instead of walking the board square by square
 public class ProtoBoard {
-    private final short[][] board;
-    private final BitSet[][] zobristBoard;
-    private final BitSet zobristHash;
-    private final ArrayList<BitSet> zobristHashHistory;
-    private final static int BIT_SET_SIZE = 128;
+    // upper bound on the number of legal moves in a position
+    public final static int MAX_MOVES = 128;
+    // seed of the zobrist keys, fixed so that hashes are the same in every run
+    public final static long ZOBRIST_SEED = 0x5DEECE66DC0FFEEL;
+    // one key per square and piece index (see convertPieceValue)
+    private final static long[][] ZOBRIST_BOARD = new long[32][4];
+    // key xored in when red is to move
+    private final static long ZOBRIST_SIDE;
 
-    public ProtoBoard(){
-        // initialize instance variables
-        board = new short[8][8];
-        zobristBoard = new BitSet[32][4];
-        zobristHashHistory = new ArrayList<>();
-        zobristHash = new BitSet(BIT_SET_SIZE);
+    // direction order used by all tables: down-right, down-left, up-right, up-left
+    // yDir == +1 for down. yDir == -1 for up
+    // xDir == +1 for right. xDir == -1 for left
+    private final static int[] Y_DIR = {1, 1, -1, -1};
+    private final static int[] X_DIR = {1, -1, 1, -1};
+    // shift that steps one square in a direction, depends on the parity of the row
+    private final static int[] SHIFT_EVEN = {5, 4, -3, -4};
+    private final static int[] SHIFT_ODD = {4, 3, -4, -5};
+    // shift that jumps two squares in a direction, the same for both parities
+    private final static int[] JUMP_SHIFT = {9, 7, -7, -9};
+    // rows on which black and red men are promoted
+    private final static int BLACK_KING_ROW = 0xF0000000;
+    private final static int RED_KING_ROW = 0x0000000F;
+
+    // square reached by stepping/jumping in a direction, -1 if off the board
+    private final static int[][] NEIGHBOR = new int[4][32];
+    private final static int[][] JUMP = new int[4][32];
+    // squares that can step/jump in a direction, split by row parity
+    private final static int[] STEP_MASK_EVEN = new int[4];
+    private final static int[] STEP_MASK_ODD = new int[4];
+    private final static int[] JUMP_MASK_EVEN = new int[4];
+    private final static int[] JUMP_MASK_ODD = new int[4];
+
+    static {
         // randomize zobrist board
-        for(int i = 0; i < zobristBoard.length; i++){
-            for(int j = 0; j < zobristBoard[i].length; j++){
-                BitSet bitSet = new BitSet(BIT_SET_SIZE);
-                for(int k = 0; k < bitSet.size(); k++){
-                    boolean b = Math.random() < 0.5;
-                    bitSet.set(k, b);
-                }
-                zobristBoard[i][j] = bitSet;
+        Random random = new Random(ZOBRIST_SEED);
+        for (int s = 0; s < 32; s++) {
+            for (int p = 0; p < 4; p++) {
+                ZOBRIST_BOARD[s][p] = random.nextLong();
             }
         }
-        // set up proto board and zobrist hash
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 1 - (i % 2); j < board[i].length; j += 2) {
-                if (i <= 2) {
-                    //black is true/positive
-                    board[i][j] = 2;
-                    zobristHash.xor(zobristBoard[(i * 4) + j/2][0]);
-                } else if (i >= 5) {
-                    //red is false/negative
-                    board[i][j] = -2;
-                    zobristHash.xor(zobristBoard[(i * 4) + j/2][1]);
+        ZOBRIST_SIDE = random.nextLong();
+
+        for (int s = 0; s < 32; s++) {
+            int row = rowOf(s);
+            int col = colOf(s);
+            for (int d = 0; d < 4; d++) {
+                NEIGHBOR[d][s] = inBounds(row + Y_DIR[d], col + X_DIR[d])
+                        ? squareOf(row + Y_DIR[d], col + X_DIR[d]) : -1;
+                JUMP[d][s] = inBounds(row + 2 * Y_DIR[d], col + 2 * X_DIR[d])
+                        ? squareOf(row + 2 * Y_DIR[d], col + 2 * X_DIR[d]) : -1;
+                if (NEIGHBOR[d][s] != -1) {
+                    if (row % 2 == 0)
+                        STEP_MASK_EVEN[d] |= 1 << s;
+                    else
+                        STEP_MASK_ODD[d] |= 1 << s;
+                }
+                if (JUMP[d][s] != -1) {
+                    if (row % 2 == 0)
+                        JUMP_MASK_EVEN[d] |= 1 << s;
+                    else
+                        JUMP_MASK_ODD[d] |= 1 << s;
                 }
             }
         }
     }
 
+    // black pieces, red pieces and kings of either color
+    private int black;
+    private int red;
+    private int kings;
+    // color of the side to move, 1 for black and -1 for red
+    private int sideToMove;
+    private long zobristHash;
+    // weights of the evaluation and their value of every piece index
+    // (see convertPieceValue) on every square, positive for black
+    private EvalWeights evalWeights = EvalWeights.DEFAULT;
+    private int[][] pieceSquare = evalWeights.getPieceSquare();
+    // sum of pieceSquare over all pieces, kept up to date by every change to the board
+    private int evaluation;
+    // moves since the last capture or man move, none of which can be undone,
+    // so no earlier position can come back
+    private int reversibleMoves;
+    // state saved by makeMove so that unmakeMove can restore it
+    private int[] undoBlack;
+    private int[] undoRed;
+    private int[] undoKings;
+    private int[] undoSide;
+    private int[] undoEvaluation;
+    private int[] undoReversible;
+    private long[] zobristHashHistory;
+    private int undoSize;
+
+    public ProtoBoard(){
+        // initialize instance variables
+        undoBlack = new int[64];
+        undoRed = new int[64];
+        undoKings = new int[64];
+        undoSide = new int[64];
+        undoEvaluation = new int[64];
+        undoReversible = new int[64];
+        zobristHashHistory = new long[64];
+        sideToMove = 1;
+        // set up proto board and zobrist hash
+        // black is true/positive and starts on the first three rows
+        black = 0x00000FFF;
+        // red is false/negative and starts on the last three rows
+        red = 0xFFF00000;
+        for (int s = 0; s < 32; s++) {
+            if (((black | red) & (1 << s)) != 0)
+                zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+        }
+        evaluation = computeEvaluation();
+    }
+
+    // copy constructor, the copy gets its own undo stack
+    public ProtoBoard(ProtoBoard protoBoard){
+        black = protoBoard.black;
+        red = protoBoard.red;
+        kings = protoBoard.kings;
+        sideToMove = protoBoard.sideToMove;
+        zobristHash = protoBoard.zobristHash;
+        evalWeights = protoBoard.evalWeights;
+        pieceSquare = protoBoard.pieceSquare;
+        evaluation = protoBoard.evaluation;
+        reversibleMoves = protoBoard.reversibleMoves;
+        undoBlack = protoBoard.undoBlack.clone();
+        undoRed = protoBoard.undoRed.clone();
+        undoKings = protoBoard.undoKings.clone();
+        undoSide = protoBoard.undoSide.clone();
+        undoEvaluation = protoBoard.undoEvaluation.clone();
+        undoReversible = protoBoard.undoReversible.clone();
+        zobristHashHistory = protoBoard.zobristHashHistory.clone();
+        undoSize = protoBoard.undoSize;
+    }
+
     public int hashCode() {
-        return Arrays.deepHashCode(board);
+        return Arrays.hashCode(new int[]{black, red, kings});
     }
 
-    public BitSet getZobristHash(){
+    public long getZobristHash(){
         return zobristHash;
     }
 
+    // material and piece-square score of the position, positive if black is ahead
+    public int getEvaluation() {
+        return evaluation;
+    }
+
+    // computes the score kept in evaluation from scratch
+    public int computeEvaluation() {
+        int value = 0;
+        for (int s = 0; s < 32; s++) {
+            if (((black | red) & (1 << s)) != 0)
+                value += pieceSquare[pieceIndex(s)][s];
+        }
+        return value;
+    }
+
+    public EvalWeights getEvalWeights() {
+        return evalWeights;
+    }
+
+    // evaluates with other weights from now on, including after moves are unmade
+    public void setEvalWeights(EvalWeights evalWeights) {
+        if (evalWeights == this.evalWeights)
+            return;
+        this.evalWeights = evalWeights;
+        pieceSquare = evalWeights.getPieceSquare();
+        evaluation = computeEvaluation();
+        // the positions on the undo stack are rescored as well
+        int black = this.black;
+        int red = this.red;
+        int kings = this.kings;
+        for (int i = 0; i < undoSize; i++) {
+            this.black = undoBlack[i];
+            this.red = undoRed[i];
+            this.kings = undoKings[i];
+            undoEvaluation[i] = computeEvaluation();
+        }
+        this.black = black;
+        this.red = red;
+        this.kings = kings;
+    }
+
+    // squares of the black pieces, red pieces and kings as bitmasks
+    public int getBlack() {
+        return black;
+    }
+
+    public int getRed() {
+        return red;
+    }
+
+    public int getKings() {
+        return kings;
+    }
+
+    // replaces the pieces on the board and recomputes the hash and evaluation
+    // the undo stack is cleared, so earlier moves can no longer be unmade
+    public void setPosition(int black, int red, int kings, int sideToMove) {
+        this.black = black;
+        this.red = red;
+        this.kings = kings & (black | red);
+        this.sideToMove = sideToMove;
+        undoSize = 0;
+        reversibleMoves = 0;
+        zobristHash = sideToMove < 0 ? ZOBRIST_SIDE : 0;
+        for (int s = 0; s < 32; s++) {
+            if (((black | red) & (1 << s)) != 0)
+                zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+        }
+        evaluation = computeEvaluation();
+    }
+
+    public int getReversibleMoves() {
+        return reversibleMoves;
+    }
+
+    // whether the position already occurred since the last capture or man move,
+    // with the same side to move. A position repeats after four plies at the earliest
+    public boolean isRepetition() {
+        for (int i = undoSize - 4; i >= undoSize - reversibleMoves; i -= 2) {
+            if (zobristHashHistory[i] == zobristHash)
+                return true;
+        }
+        return false;
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(int color) {
+        if (color != sideToMove)
+            zobristHash ^= ZOBRIST_SIDE;
+        sideToMove = color;
+    }
+
+    public static int squareOf(int row, int col) {
+        return row * 4 + col / 2;
+    }
+
+    public static int rowOf(int square) {
+        return square >> 2;
+    }
+
+    public static int colOf(int square) {
+        return 2 * (square & 3) + 1 - (rowOf(square) & 1);
+    }
+
     public short getSquare(int row, int col){
-        return board[row][col];
+        if ((row + col) % 2 == 0)
+            return 0;
+        return pieceValue(squareOf(row, col));
     }
 
     public void setSquare(int row, int col, short piece){
-        board[row][col] = piece;
+        // positions before the edit are not compared with the ones after it
+        reversibleMoves = 0;
+        int s = squareOf(row, col);
+        int bit = 1 << s;
+        if (((black | red) & bit) != 0) {
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation -= pieceSquare[pieceIndex(s)][s];
+        }
+        black &= ~bit;
+        red &= ~bit;
+        kings &= ~bit;
+        if (piece > 0)
+            black |= bit;
+        else if (piece < 0)
+            red |= bit;
+        if (Math.abs(piece) == 5)
+            kings |= bit;
+        if (piece != 0) {
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation += pieceSquare[pieceIndex(s)][s];
+        }
     }
 
     public void makeKing(int row, int col) {
-        if (Math.abs(board[row][col]) == 2) {
-            board[row][col] = (short) (board[row][col] * 2.5);
+        if (Math.abs(getSquare(row, col)) == 2) {
+            int s = squareOf(row, col);
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation -= pieceSquare[pieceIndex(s)][s];
+            kings |= 1 << s;
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation += pieceSquare[pieceIndex(s)][s];
         }
     }
 
     public void makeNormal(int row, int col) {
-        if (Math.abs(board[row][col]) == 5) {
-            board[row][col] = (short) (board[row][col] / 2.5);
+        if (Math.abs(getSquare(row, col)) == 5) {
+            int s = squareOf(row, col);
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation -= pieceSquare[pieceIndex(s)][s];
+            kings &= ~(1 << s);
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation += pieceSquare[pieceIndex(s)][s];
         }
     }
 
@@ -86,276 +328,407 @@ public class ProtoBoard {
         else return -1;
     }
 
-    // General instructions for piece movement
-    // yDir == +1 for down. yDir == -1 for up
-    // xDir == +1 for right. xDir == -1 for left
-
-    public short movePiece(int row, int col, int yDir, int xDir) {
-        short piece = board[row][col];
-        // update board array
-        board[row + yDir][col + xDir] = piece;
-        board[row][col] = 0;
-        return piece;
+    // value of the piece on a square: 2/5 for black men/kings,
+    // -2/-5 for red men/kings and 0 if empty
+    private short pieceValue(int square) {
+        int bit = 1 << square;
+        short value = (short) ((kings & bit) != 0 ? 5 : 2);
+        if ((black & bit) != 0)
+            return value;
+        else if ((red & bit) != 0)
+            return (short) -value;
+        return 0;
     }
 
-    public boolean canMovePiece(int row, int col, int yDir, int xDir) {
-        short piece  = board[row][col];
-        if(Math.abs(piece) == 2 && piece * yDir < 0) {
-            return false;
-        }
-        return (inBounds(row + yDir, col + xDir) && board[row + yDir][col + xDir] == 0);
+    // zobrist index of the piece on a square
+    private short pieceIndex(int square) {
+        return convertPieceValue(pieceValue(square));
     }
 
-    public short capturePiece(int row, int col, int yDir, int xDir) {
-        short piece = board[row][col];
-        //update board array
-        short capturedPiece = board[row + yDir][col + xDir];
-        board[row + yDir][col + xDir] = 0;
-        board[row + 2 * yDir][col + 2 * xDir] = piece;
-        board[row][col] = 0;
-        return capturedPiece;
+    // shifts a mask left for positive amounts and right for negative ones
+    private static int shift(int mask, int amount) {
+        return amount >= 0 ? mask << amount : mask >>> -amount;
     }
 
-    public boolean canCapturePiece(int row, int col, int yDir, int xDir) {
-        int piece = board[row][col];
-        if(Math.abs(piece) == 2 && piece * yDir < 0) {
-            return false;
+    // moves the piece on from to to, removing the captured pieces
+    // and crowning the piece if it was promoted along the way
+    private void applyMove(int from, int to, int captured, boolean promoted) {
+        if (undoSize == undoBlack.length) {
+            undoBlack = Arrays.copyOf(undoBlack, undoSize * 2);
+            undoRed = Arrays.copyOf(undoRed, undoSize * 2);
+            undoKings = Arrays.copyOf(undoKings, undoSize * 2);
+            undoSide = Arrays.copyOf(undoSide, undoSize * 2);
+            undoEvaluation = Arrays.copyOf(undoEvaluation, undoSize * 2);
+            undoReversible = Arrays.copyOf(undoReversible, undoSize * 2);
+            zobristHashHistory = Arrays.copyOf(zobristHashHistory, undoSize * 2);
         }
-        if (inBounds(row + 2*yDir, col + 2*xDir)) {
-            return (board[row + yDir][col + xDir] != 0 && board[row + yDir][col + xDir] * piece < 0)
-                    && (board[row + 2 * yDir][col + 2 * xDir] == 0);
-        } else {
-            return false;
+        undoBlack[undoSize] = black;
+        undoRed[undoSize] = red;
+        undoKings[undoSize] = kings;
+        undoSide[undoSize] = sideToMove;
+        undoEvaluation[undoSize] = evaluation;
+        undoReversible[undoSize] = reversibleMoves;
+        zobristHashHistory[undoSize] = zobristHash;
+        undoSize++;
+
+        int fromBit = 1 << from;
+        int toBit = 1 << to;
+        boolean king = (kings & fromBit) != 0 || promoted;
+        reversibleMoves = captured == 0 && (kings & fromBit) != 0 ? reversibleMoves + 1 : 0;
+        int color = (black & fromBit) != 0 ? 1 : -1;
+        // take the moving piece and everything it captures off the board,
+        // the hash and the evaluation
+        zobristHash ^= ZOBRIST_BOARD[from][pieceIndex(from)];
+        evaluation -= pieceSquare[pieceIndex(from)][from];
+        for (int rest = captured; rest != 0; rest &= rest - 1) {
+            int s = Integer.numberOfTrailingZeros(rest);
+            zobristHash ^= ZOBRIST_BOARD[s][pieceIndex(s)];
+            evaluation -= pieceSquare[pieceIndex(s)][s];
         }
+        black &= ~(captured | fromBit);
+        red &= ~(captured | fromBit);
+        kings &= ~(captured | fromBit);
+        // put it back down on its destination
+        if (color > 0)
+            black |= toBit;
+        else
+            red |= toBit;
+        if (king)
+            kings |= toBit;
+        zobristHash ^= ZOBRIST_BOARD[to][pieceIndex(to)];
+        evaluation += pieceSquare[pieceIndex(to)][to];
+        setSideToMove(-color);
     }
 
     public void makeMove(AbstractMove abstractMove){
-        BitSet newZobristHash = new BitSet(BIT_SET_SIZE);
-        if(abstractMove.getType()){
-            Move move = (Move) abstractMove;
-            int row = move.getRow();
-            int col = move.getCol();
-            int yDir = move.getYDir();
-            int xDir = move.getXDir();
-            // make move and some prehashwork
-            short pieceIndex = convertPieceValue(movePiece(row, col, yDir, xDir));
-            newZobristHash.xor(zobristBoard[row*4 + col/2][pieceIndex]);
-            // turn piece to king if necessary
-            if((move.getTurnKingMove() == -1 && Math.abs(board[row+yDir][col+xDir]) == 2)
-                    && (row + yDir == 7 || row + yDir == 0)){
-                move.setTurnKingMove(0);
-                makeKing(row+yDir, col+xDir);
-                pieceIndex+=2;
-            }
-            // update hash
-            newZobristHash.xor(zobristBoard[(row+yDir)*4 + (col+xDir)/2][pieceIndex]);
+        makeMove(encodeMove(abstractMove));
+    }
+
+    public void unmakeMove(AbstractMove abstractMove){
+        unmakeMove();
+    }
+
+    // makes a move packed by PackedMove
+    public void makeMove(int move){
+        int from = PackedMove.getFrom(move);
+        int jumps = PackedMove.getJumps(move);
+        int to;
+        int captured = 0;
+        boolean promoted;
+        if (jumps == 0) {
+            to = NEIGHBOR[PackedMove.getDirection(move, 0)][from];
+            promoted = ((BLACK_KING_ROW | RED_KING_ROW) & (1 << to)) != 0;
         }
-        else{
-            Capture capture = (Capture) abstractMove;
-            for (int i = 0; i < capture.getSize(); i++) {
-                int row = capture.getRow()[i];
-                int col = capture.getCol()[i];
-                int yDir = capture.getYDir()[i];
-                int xDir = capture.getXDir()[i];
-                // some prehashwork
-                short pieceIndex = convertPieceValue(board[row][col]);
-                if(i == 0) {
-                    //BitSet newZobristHash = new BitSet(128);
-                    newZobristHash.xor(zobristBoard[row * 4 + col / 2][pieceIndex]);
-                }
-                // do capture
-                short capturedPiece = capturePiece(row, col, yDir, xDir);
-                capture.setPiecesCaptured(capturedPiece, i);
-                capturedPiece = convertPieceValue(capturedPiece);
-                // turn piece to king if necessary
-                if((capture.getTurnKingMove() == -1 && Math.abs(board[row+2*yDir][col+2*xDir]) == 2)
-                        && (row + 2*yDir == 7 || row + 2*yDir == 0)){
-                    capture.setTurnKingMove(i);
-                    makeKing(row+2*yDir, col+2*xDir);
-                    pieceIndex+=2;
-                }
-                // update hash
-                if(i == capture.getSize() - 1) {
-                    newZobristHash.xor(zobristBoard[(row + 2 * yDir) * 4 + (col + 2 * xDir) / 2][pieceIndex]);
-                }
-                newZobristHash.xor(zobristBoard[(row+yDir)*4 + (col+xDir)/2][capturedPiece]);
+        else {
+            to = from;
+            promoted = false;
+            for (int i = 0; i < jumps; i++) {
+                int d = PackedMove.getDirection(move, i);
+                captured |= 1 << NEIGHBOR[d][to];
+                to = JUMP[d][to];
+                // a man landing on the last row is crowned and keeps capturing as a king
+                if (((BLACK_KING_ROW | RED_KING_ROW) & (1 << to)) != 0)
+                    promoted = true;
             }
         }
-        // update hash
-        zobristHash.xor(newZobristHash);
-        zobristHashHistory.add(newZobristHash);
+        applyMove(from, to, captured, promoted);
     }
 
-    public void unmakeMove(AbstractMove abstractMove){
-        if(abstractMove.getType()){
+    // unmakes the last move made
+    public void unmakeMove(){
+        undoSize--;
+        black = undoBlack[undoSize];
+        red = undoRed[undoSize];
+        kings = undoKings[undoSize];
+        sideToMove = undoSide[undoSize];
+        evaluation = undoEvaluation[undoSize];
+        reversibleMoves = undoReversible[undoSize];
+        zobristHash = zobristHashHistory[undoSize];
+    }
+
+    // packs a Move or Capture into an int
+    public static int encodeMove(AbstractMove abstractMove) {
+        if (abstractMove.getType()) {
             Move move = (Move) abstractMove;
-            int row = move.getRow();
-            int col = move.getCol();
-            int yDir = move.getYDir();
-            int xDir = move.getXDir();
-            movePiece(row + yDir, col + xDir, -yDir, -xDir);
-            if(move.getTurnKingMove() == 0){
-                makeNormal(row, col);
-            }
-            move.reset();
+            return PackedMove.quiet(squareOf(move.getRow(), move.getCol()),
+                    direction(move.getYDir(), move.getXDir()));
         }
-        else{
-            Capture capture = (Capture) abstractMove;
-            for (int i = capture.getSize() - 1; i >= 0; i--) {
-                int row = capture.getRow()[i];
-                int col = capture.getCol()[i];
-                int yDir = capture.getYDir()[i];
-                int xDir = capture.getXDir()[i];
-                convertPieceValue(movePiece(row + 2*yDir, col + 2*xDir, -2*yDir, -2*xDir));
-                short capturedPiece = capture.getPiecesCaptured()[i];
-                setSquare(row + yDir, col + xDir, capturedPiece);
-                if(capture.getTurnKingMove() == i){
-                    makeNormal(row, col);
-                }
-            }
-            capture.reset();
+        Capture capture = (Capture) abstractMove;
+        int move = PackedMove.capture(squareOf(capture.getRow()[0], capture.getCol()[0]));
+        for (int i = 0; i < capture.getSize(); i++) {
+            move = PackedMove.addJump(move, direction(capture.getYDir()[i], capture.getXDir()[i]));
+        }
+        return move;
+    }
+
+    // unpacks a packed move into the Move or Capture used by the GUI
+    public static AbstractMove toAbstractMove(int move) {
+        int from = PackedMove.getFrom(move);
+        if (!PackedMove.isCapture(move)) {
+            int d = PackedMove.getDirection(move, 0);
+            return new Move(rowOf(from), colOf(from), Y_DIR[d], X_DIR[d]);
         }
-        // update hash
-        zobristHash.xor(zobristHashHistory.get(zobristHashHistory.size() - 1));
-        zobristHashHistory.remove(zobristHashHistory.size() - 1);
-    }
-
-    // method makes only last capture in Capture Object
-    public void makeLastCapture(Capture capture){
-        int i = capture.getSize() - 1;
-        int row = capture.getRow()[i];
-        int col = capture.getCol()[i];
-        int yDir = capture.getYDir()[i];
-        int xDir = capture.getXDir()[i];
-        // do capture
-        short capturedPiece = capturePiece(row, col, yDir, xDir);
-        capture.setPiecesCaptured(capturedPiece, i);
-        // turn piece to king if necessary
-        if((capture.getTurnKingMove() == -1 && Math.abs(board[row+2*yDir][col+2*xDir]) == 2)
-                && (row + 2*yDir == 7 || row + 2*yDir == 0)){
-            capture.setTurnKingMove(i);
-            makeKing(row+2*yDir, col+2*xDir);
+        Capture capture = new Capture();
+        int s = from;
+        for (int i = 0; i < PackedMove.getJumps(move); i++) {
+            int d = PackedMove.getDirection(move, i);
+            capture.setMoveInfo(rowOf(s), colOf(s), Y_DIR[d], X_DIR[d]);
+            s = JUMP[d][s];
         }
+        return capture;
     }
 
-    // method unmakes only last capture in Capture Object
-    public void unmakeLastCapture(Capture capture) {
-        int i = capture.getSize() - 1;
-        int r = capture.getRow()[i] + 2*capture.getYDir()[i];
-        int c = capture.getCol()[i] + 2*capture.getXDir()[i];
-        movePiece(r, c, -2*capture.getYDir()[i], -2*capture.getXDir()[i]);
-        setSquare(capture.getRow()[i] + capture.getYDir()[i],
-                capture.getCol()[i] + capture.getXDir()[i], capture.getPiecesCaptured()[i]);
-        if(capture.getTurnKingMove() == i){
-            makeNormal(capture.getRow()[i], capture.getCol()[i]);
+    // the square a packed move ends on
+    public static int getTo(int move) {
+        int s = PackedMove.getFrom(move);
+        if (!PackedMove.isCapture(move))
+            return NEIGHBOR[PackedMove.getDirection(move, 0)][s];
+        for (int i = 0; i < PackedMove.getJumps(move); i++) {
+            s = JUMP[PackedMove.getDirection(move, i)][s];
         }
-        if(i == 0){
-            capture.reset();
+        return s;
+    }
+
+    // whether a move crowns a man, checked before the move is made
+    public boolean isPromotion(int move) {
+        int from = PackedMove.getFrom(move);
+        if ((kings & (1 << from)) != 0)
+            return false;
+        int to = from;
+        for (int i = 0; i < Math.max(1, PackedMove.getJumps(move)); i++) {
+            int d = PackedMove.getDirection(move, i);
+            to = PackedMove.isCapture(move) ? JUMP[d][to] : NEIGHBOR[d][to];
+            if (((BLACK_KING_ROW | RED_KING_ROW) & (1 << to)) != 0)
+                return true;
         }
+        return false;
     }
 
-    //makes array of all legal moves for all pieces of color
-    public ArrayList<AbstractMove> generateLegalMoves(int color) {
-        ArrayList<AbstractMove> legalMoves = new ArrayList<>();
-
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 1 - (i % 2); j < board[i].length; j += 2) {
-                if (board[i][j] * color > 0 ) {
-                    if (canCapturePiece(i, j, 1, 1)){
-                        Capture capture = new Capture();
-                        captureHelper(legalMoves, capture, i, j, 1, 1);
-                    }
-                    if (canCapturePiece(i, j, -1, 1)){
-                        Capture capture = new Capture();
-                        captureHelper(legalMoves, capture, i, j, -1, 1);
-                    }
-                    if (canCapturePiece(i, j, 1, -1)){
-                        Capture capture = new Capture();
-                        captureHelper(legalMoves, capture, i, j, 1, -1);
-                    }
-                    if (canCapturePiece(i, j, -1, -1)){
-                        Capture capture = new Capture();
-                        captureHelper(legalMoves, capture, i, j, -1, -1);
-                    }
-                }
-            }
+    // writes the position in PDN FEN, like B:W21,22,K30:B1,2,K5 with the side to
+    // move first and then the red (white) and black pieces, numbered 1-32
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(sideToMove > 0 ? "B" : "W");
+        fen.append(":W");
+        appendSquares(fen, red);
+        fen.append(":B");
+        appendSquares(fen, black);
+        return fen.toString();
+    }
+
+    private void appendSquares(StringBuilder fen, int pieces) {
+        boolean first = true;
+        for (int rest = pieces; rest != 0; rest &= rest - 1) {
+            int s = Integer.numberOfTrailingZeros(rest);
+            if (!first)
+                fen.append(',');
+            if ((kings & (1 << s)) != 0)
+                fen.append('K');
+            fen.append(s + 1);
+            first = false;
         }
+    }
 
-        if (legalMoves.isEmpty()) {
-            for (int i = 0; i < board.length; i++) {
-                for (int j = 1 - (i % 2); j < board[i].length; j += 2) {
-                    if (board[i][j] * color > 0) {
-                        if (canMovePiece(i, j, 1, 1)) {
-                            legalMoves.add(new Move(i, j, 1, 1));
-                        }
-                        if (canMovePiece(i, j, 1, -1)) {
-                            legalMoves.add(new Move(i, j, 1, -1));
-                        }
-                        if (canMovePiece(i, j, -1, 1)) {
-                            legalMoves.add(new Move(i, j, -1, 1));
-                        }
-                        if (canMovePiece(i, j, -1, -1)) {
-                            legalMoves.add(new Move(i, j, -1, -1));
-                        }
+    // reads a position written by toFen, square ranges like 1-12 are allowed as well
+    public static ProtoBoard fromFen(String fen) {
+        String[] fields = fen.trim().replace(".", "").split(":");
+        if (fields.length != 3 || !(fields[0].equals("B") || fields[0].equals("W")))
+            throw new IllegalArgumentException("not a FEN position: " + fen);
+        int[] pieces = new int[2];
+        int kings = 0;
+        for (int i = 1; i < 3; i++) {
+            String field = fields[i];
+            if (field.isEmpty() || !(field.charAt(0) == 'B' || field.charAt(0) == 'W'))
+                throw new IllegalArgumentException("not a FEN position: " + fen);
+            int color = field.charAt(0) == 'B' ? 0 : 1;
+            for (String square : field.substring(1).split(",")) {
+                if (square.isEmpty())
+                    continue;
+                boolean king = square.startsWith("K");
+                if (king)
+                    square = square.substring(1);
+                String[] range = square.split("-");
+                try {
+                    int first = Integer.parseInt(range[0]);
+                    int last = range.length > 1 ? Integer.parseInt(range[1]) : first;
+                    if (first < 1 || last > 32 || first > last)
+                        throw new IllegalArgumentException("square out of range in " + fen);
+                    for (int s = first - 1; s < last; s++) {
+                        pieces[color] |= 1 << s;
+                        if (king)
+                            kings |= 1 << s;
                     }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("not a FEN position: " + fen, e);
                 }
             }
         }
-        return legalMoves;
+        if ((pieces[0] & pieces[1]) != 0)
+            throw new IllegalArgumentException("two pieces on one square in " + fen);
+        ProtoBoard protoBoard = new ProtoBoard();
+        protoBoard.setPosition(pieces[0], pieces[1], kings, fields[0].equals("B") ? 1 : -1);
+        return protoBoard;
     }
 
-    //helper method for generateLegalMoves
-    //assumes capture can happen
-    private void captureHelper(ArrayList<AbstractMove> legalMoves, Capture capture, int i, int j, int yDir, int xDir) {
-        capture.setMoveInfo(i, j, yDir, xDir);
-        boolean b = true;
+    // binary form of a position: black, red and kings masks and the side to move, 13 bytes
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(black);
+        out.writeInt(red);
+        out.writeInt(kings);
+        out.writeByte(sideToMove);
+    }
+
+    public static ProtoBoard read(DataInput in) throws IOException {
+        int black = in.readInt();
+        int red = in.readInt();
+        int kings = in.readInt();
+        int sideToMove = in.readByte();
+        if ((black & red) != 0 || (sideToMove != 1 && sideToMove != -1))
+            throw new IOException("corrupt position");
+        ProtoBoard protoBoard = new ProtoBoard();
+        protoBoard.setPosition(black, red, kings, sideToMove);
+        return protoBoard;
+    }
+
+    // writes a packed move in checkers notation with squares numbered 1-32
+    // (index + 1), like 9-13 for a move and 22x15x8 for a double jump
+    public static String toNotation(int move) {
+        int s = PackedMove.getFrom(move);
+        StringBuilder notation = new StringBuilder().append(s + 1);
+        if (!PackedMove.isCapture(move))
+            return notation.append('-').append(NEIGHBOR[PackedMove.getDirection(move, 0)][s] + 1).toString();
+        for (int i = 0; i < PackedMove.getJumps(move); i++) {
+            s = JUMP[PackedMove.getDirection(move, i)][s];
+            notation.append('x').append(s + 1);
+        }
+        return notation.toString();
+    }
 
-        makeLastCapture(capture);
-        if (canCapturePiece(i + 2 * yDir, j + 2 * xDir, 1, 1)) {
-            Capture captureCopy = new Capture(capture);
-            b = false;
-            captureHelper(legalMoves, captureCopy, i + 2 * yDir, j + 2 * xDir, 1, 1);
+    // finds the legal move written in checkers notation, NONE if there is none
+    // captures may leave out the squares in between, as in 22x8
+    public int parseMove(String notation, int color) {
+        int[] moves = new int[MAX_MOVES];
+        int count = generateMoves(color, moves);
+        for (int i = 0; i < count; i++) {
+            String legal = toNotation(moves[i]);
+            if (legal.equals(notation))
+                return moves[i];
+            if (notation.indexOf('x') > 0 && legal.startsWith(notation.substring(0, notation.indexOf('x')) + "x")
+                    && legal.endsWith(notation.substring(notation.lastIndexOf('x'))))
+                return moves[i];
         }
-        if (canCapturePiece(i + 2 * yDir, j + 2 * xDir, -1, 1)) {
-            Capture captureCopy = new Capture(capture);
-            b = false;
-            captureHelper(legalMoves, captureCopy, i + 2 * yDir, j + 2 * xDir, -1, 1);
+        return PackedMove.NONE;
+    }
+
+    // index of the direction (yDir, xDir) in the direction tables
+    private static int direction(int yDir, int xDir) {
+        return (yDir > 0 ? 0 : 2) + (xDir > 0 ? 0 : 1);
+    }
+
+    //makes array of all legal moves for all pieces of color
+    public ArrayList<AbstractMove> generateLegalMoves(int color) {
+        int[] moves = new int[MAX_MOVES];
+        int count = generateMoves(color, moves);
+        ArrayList<AbstractMove> legalMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legalMoves.add(toAbstractMove(moves[i]));
+        }
+        return legalMoves;
+    }
+
+    // writes all legal moves for color into moves as packed moves
+    // and returns how many there are
+    public int generateMoves(int color, int[] moves) {
+        int count = 0;
+        int own = color > 0 ? black : red;
+        int enemy = color > 0 ? red : black;
+        int empty = ~(black | red);
+
+        // captures are mandatory, so only look for quiet moves if there are none
+        for (int d = 0; d < 4; d++) {
+            int jumpers = movers(own, d, color)
+                    & ((JUMP_MASK_EVEN[d] & shift(enemy, -SHIFT_EVEN[d]))
+                    | (JUMP_MASK_ODD[d] & shift(enemy, -SHIFT_ODD[d])))
+                    & shift(empty, -JUMP_SHIFT[d]);
+            while (jumpers != 0) {
+                int s = Integer.numberOfTrailingZeros(jumpers);
+                jumpers &= jumpers - 1;
+                count = captureHelper(moves, count, PackedMove.capture(s), s, d,
+                        (kings & (1 << s)) != 0, color, enemy, empty | (1 << s));
+            }
         }
-        if (canCapturePiece(i + 2 * yDir, j + 2 * xDir, 1, -1)) {
-            Capture captureCopy = new Capture(capture);
-            b = false;
-            captureHelper(legalMoves, captureCopy, i + 2 * yDir, j + 2 * xDir, 1, -1);
+
+        if (count == 0) {
+            for (int d = 0; d < 4; d++) {
+                int steppers = movers(own, d, color)
+                        & ((STEP_MASK_EVEN[d] & shift(empty, -SHIFT_EVEN[d]))
+                        | (STEP_MASK_ODD[d] & shift(empty, -SHIFT_ODD[d])));
+                while (steppers != 0) {
+                    int s = Integer.numberOfTrailingZeros(steppers);
+                    steppers &= steppers - 1;
+                    moves[count++] = PackedMove.quiet(s, d);
+                }
+            }
         }
-        if (canCapturePiece(i + 2 * yDir, j + 2 * xDir, -1, -1)) {
-            Capture captureCopy = new Capture(capture);
-            b = false;
-            captureHelper(legalMoves, captureCopy, i + 2 * yDir, j + 2 * xDir, -1, -1);
+        return count;
+    }
+
+    // pieces of own that may travel in direction d: men only move forward
+    private int movers(int own, int d, int color) {
+        if ((d < 2) == (color > 0))
+            return own;
+        return own & kings;
+    }
+
+    //helper method for generateMoves
+    //assumes the jump from square s in direction d can happen
+    private int captureHelper(int[] moves, int count, int move, int s, int d,
+                              boolean king, int color, int enemy, int empty) {
+        int over = NEIGHBOR[d][s];
+        int land = JUMP[d][s];
+        move = PackedMove.addJump(move, d);
+        // captured pieces are removed right away so they cannot be jumped twice
+        enemy &= ~(1 << over);
+        empty = (empty | (1 << over)) & ~(1 << land);
+        // a man reaching the last row is crowned and continues as a king
+        if (!king && ((color > 0 ? BLACK_KING_ROW : RED_KING_ROW) & (1 << land)) != 0)
+            king = true;
+
+        boolean b = true;
+        if (PackedMove.getJumps(move) < PackedMove.MAX_JUMPS) {
+            for (int next = 0; next < 4; next++) {
+                if (!king && (next < 2) != (color > 0))
+                    continue;
+                if (JUMP[next][land] != -1 && (enemy & (1 << NEIGHBOR[next][land])) != 0
+                        && (empty & (1 << JUMP[next][land])) != 0) {
+                    b = false;
+                    count = captureHelper(moves, count, move, land, next, king, color, enemy, empty);
+                }
+            }
         }
-        unmakeLastCapture(capture);
 
         if (b) {
-            capture.reset(); //makes sure capture being added is a clean slate
-            legalMoves.add(capture);
+            moves[count++] = move;
         }
+        return count;
     }
 
     public String toString() {
         StringBuilder s = new StringBuilder();
-        for (int i = 0; i < board.length; i++) {
+        for (int i = 0; i < 8; i++) {
             s.append("[");
-            for (int j = 0; j < board[i].length; j++) {
-                short piece = board[i][j];
+            for (int j = 0; j < 8; j++) {
+                short piece = getSquare(i, j);
                 if (piece >= 0) {
                     s.append(" ");
                 }
                 s.append(piece);
-                if (j != board[i].length - 1)
+                if (j != 7)
                     s.append(",");
             }
             s.append("]");
-            if (i != board.length - 1)
+            if (i != 7)
                 s.append("\n");
         }
         return s.toString();
     }
-    }
+}
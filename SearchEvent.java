@@ -0,0 +1,57 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event committed at the end of every Engine.nextBestMove, its
+// duration is the time the search took. Recorded only while a recording with
+// the event enabled is running, for example with
+//   java -XX:StartFlightRecording:filename=games.jfr,settings=profile ...
+// and read with: jfr print --events checkers.Search games.jfr
+@Name("checkers.Search")
+@Label("Search")
+@Category("Checkers")
+@Description("A search for the best move of a position")
+public class SearchEvent extends jdk.jfr.Event {
+    @Label("Threads")
+    int threads;
+
+    @Label("Completed Depth")
+    int depth;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    int eval;
+
+    @Label("Book Move")
+    boolean bookMove;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes per Second")
+    long nodesPerSecond;
+
+    @Label("Leaf Evaluations")
+    long leafEvaluations;
+
+    @Label("TT Probes")
+    long ttProbes;
+
+    @Label("TT Hit Rate")
+    double ttHitRate;
+
+    @Label("TT Overwrites")
+    long ttOverwrites;
+
+    @Label("Beta Cutoffs")
+    long cutoffs;
+
+    @Label("First Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Database Hits")
+    long databaseHits;
+}
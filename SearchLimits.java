@@ -0,0 +1,68 @@
+// Limits on a single Engine.nextBestMove search.
+// Any limit that is left at 0 does not restrict the search
+public class SearchLimits {
+    // deepest iteration the engine is allowed to start
+    private int maxDepth;
+    // time for this move in milliseconds
+    private long moveTime;
+    // time left on the engine's game clock and the increment it gets per move
+    private long timeLeft;
+    private long increment;
+    // maximum number of nodes to search
+    private long nodeLimit;
+
+    public SearchLimits() {
+        maxDepth = Engine.MAX_DEPTH;
+    }
+
+    // limits that only bound the depth, like the old fixed depth searches
+    public static SearchLimits depth(int depth) {
+        SearchLimits limits = new SearchLimits();
+        limits.setMaxDepth(depth);
+        return limits;
+    }
+
+    // limits that give the engine a fixed amount of time for the move
+    public static SearchLimits moveTime(long millis) {
+        SearchLimits limits = new SearchLimits();
+        limits.setMoveTime(millis);
+        return limits;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(1, Math.min(maxDepth, Engine.MAX_DEPTH));
+    }
+
+    public long getMoveTime() {
+        return moveTime;
+    }
+
+    public void setMoveTime(long moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    public long getTimeLeft() {
+        return timeLeft;
+    }
+
+    public long getIncrement() {
+        return increment;
+    }
+
+    public void setGameClock(long timeLeft, long increment) {
+        this.timeLeft = timeLeft;
+        this.increment = increment;
+    }
+
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+}
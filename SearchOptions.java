@@ -0,0 +1,194 @@
+// Switches and margins of the selective parts of the search. Scores are in
+// the units of ProtoBoard's evaluation, where a man is worth 20
+// Every technique can be turned off on its own, so that self-play games can
+// measure what each of them is worth and tune its margins
+public class SearchOptions {
+    // late move reductions: quiet man moves searched late in a node are first
+    // searched with a reduced depth, and again at full depth if they beat alpha
+    private boolean lateMoveReductions = true;
+    private int reductionDepth = 3;
+    private int reductionMoves = 3;
+
+    // futility pruning: one ply from the horizon, quiet moves after the first are
+    // skipped when the static score is too far below alpha to be saved by one move.
+    // Two plies from the horizon the node is cut when it is far enough above beta
+    private boolean futilityPruning = true;
+    private int futilityMargin = 15;
+
+    // razoring: two plies from the horizon, nodes far below alpha are searched one ply less
+    private boolean razoring = true;
+    private int razorMargin = 40;
+
+    // ProbCut: a shallow null window search well above beta predicts that the
+    // full depth search would fail high as well
+    // off by default, in fixed depth tests it searched more nodes than it saved
+    private boolean probCut = false;
+    private int probCutDepth = 10;
+    private int probCutReduction = 6;
+    private int probCutMargin = 40;
+
+    // draw rule assumed by the search: plies without a capture or man move after
+    // which the game is a draw, 0 if there is no such rule. 80 is the forty move rule
+    private int drawPlies = 0;
+
+    public SearchOptions() {
+    }
+
+    // options that search every move to full depth, like before selective search
+    public static SearchOptions fullWidth() {
+        SearchOptions options = new SearchOptions();
+        options.setLateMoveReductions(false);
+        options.setFutilityPruning(false);
+        options.setRazoring(false);
+        options.setProbCut(false);
+        return options;
+    }
+
+    // sets an option by name, as given on a command line
+    public void set(String name, String value) {
+        switch (name) {
+            case "lateMoveReductions": lateMoveReductions = Boolean.parseBoolean(value); break;
+            case "reductionDepth": setReductionDepth(Integer.parseInt(value)); break;
+            case "reductionMoves": reductionMoves = Integer.parseInt(value); break;
+            case "futilityPruning": futilityPruning = Boolean.parseBoolean(value); break;
+            case "futilityMargin": futilityMargin = Integer.parseInt(value); break;
+            case "razoring": razoring = Boolean.parseBoolean(value); break;
+            case "razorMargin": razorMargin = Integer.parseInt(value); break;
+            case "probCut": probCut = Boolean.parseBoolean(value); break;
+            case "probCutDepth": setProbCutDepth(Integer.parseInt(value)); break;
+            case "probCutReduction": setProbCutReduction(Integer.parseInt(value)); break;
+            case "probCutMargin": probCutMargin = Integer.parseInt(value); break;
+            case "drawPlies": drawPlies = Integer.parseInt(value); break;
+            default: throw new IllegalArgumentException("unknown search option " + name);
+        }
+    }
+
+    // options with the changes in a list like "razoring=false,futilityMargin=20" applied
+    public static SearchOptions parse(String changes) {
+        SearchOptions options = new SearchOptions();
+        for (String change : changes.split(",")) {
+            if (change.isEmpty())
+                continue;
+            int equals = change.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("expected name=value but got " + change);
+            options.set(change.substring(0, equals).trim(), change.substring(equals + 1).trim());
+        }
+        options.validate();
+        return options;
+    }
+
+    // checks the options that depend on each other, which can only be done once
+    // all of them are set
+    public void validate() {
+        // the shallow search must still have some depth left
+        if (probCutReduction >= probCutDepth)
+            throw new IllegalArgumentException("probCutReduction " + probCutReduction
+                    + " must be less than probCutDepth " + probCutDepth);
+    }
+
+    private static void require(boolean condition, String name, int value, String bound) {
+        if (!condition)
+            throw new IllegalArgumentException(name + " must be " + bound + " but got " + value);
+    }
+
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    public int getReductionDepth() {
+        return reductionDepth;
+    }
+
+    public void setReductionDepth(int reductionDepth) {
+        // a reduced child of a node one ply deep would have a negative depth
+        require(reductionDepth >= 2, "reductionDepth", reductionDepth, "at least 2");
+        this.reductionDepth = reductionDepth;
+    }
+
+    public int getReductionMoves() {
+        return reductionMoves;
+    }
+
+    public void setReductionMoves(int reductionMoves) {
+        this.reductionMoves = reductionMoves;
+    }
+
+    public boolean isFutilityPruning() {
+        return futilityPruning;
+    }
+
+    public void setFutilityPruning(boolean futilityPruning) {
+        this.futilityPruning = futilityPruning;
+    }
+
+    public int getFutilityMargin() {
+        return futilityMargin;
+    }
+
+    public void setFutilityMargin(int futilityMargin) {
+        this.futilityMargin = futilityMargin;
+    }
+
+    public boolean isRazoring() {
+        return razoring;
+    }
+
+    public void setRazoring(boolean razoring) {
+        this.razoring = razoring;
+    }
+
+    public int getRazorMargin() {
+        return razorMargin;
+    }
+
+    public void setRazorMargin(int razorMargin) {
+        this.razorMargin = razorMargin;
+    }
+
+    public boolean isProbCut() {
+        return probCut;
+    }
+
+    public void setProbCut(boolean probCut) {
+        this.probCut = probCut;
+    }
+
+    public int getProbCutDepth() {
+        return probCutDepth;
+    }
+
+    public void setProbCutDepth(int probCutDepth) {
+        require(probCutDepth >= 2, "probCutDepth", probCutDepth, "at least 2");
+        this.probCutDepth = probCutDepth;
+    }
+
+    public int getProbCutReduction() {
+        return probCutReduction;
+    }
+
+    public void setProbCutReduction(int probCutReduction) {
+        require(probCutReduction >= 1, "probCutReduction", probCutReduction, "at least 1");
+        this.probCutReduction = probCutReduction;
+    }
+
+    public int getProbCutMargin() {
+        return probCutMargin;
+    }
+
+    public void setProbCutMargin(int probCutMargin) {
+        this.probCutMargin = probCutMargin;
+    }
+
+    public int getDrawPlies() {
+        return drawPlies;
+    }
+
+    public void setDrawPlies(int drawPlies) {
+        this.drawPlies = drawPlies;
+    }
+}
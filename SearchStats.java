@@ -0,0 +1,194 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+// Counters of a search: nodes, leaf evaluations, transposition table traffic,
+// beta cutoffs by the index of the move that caused them, and the nodes and
+// time of every completed iteration. Each searcher counts into its own
+// SearchStats without any synchronization, and the engine adds them up once
+// the search is over, so counting costs no more than an increment
+public class SearchStats {
+    // cutoffs at move index CUTOFF_INDEXES - 1 or later are counted together
+    public static final int CUTOFF_INDEXES = 8;
+
+    // counted by the searcher that owns these stats
+    long nodes;
+    long quiescenceNodes;
+    long leafEvaluations;
+    long ttProbes;
+    long ttHits;
+    long ttStores;
+    long ttOverwrites;
+    long databaseHits;
+    final long[] cutoffs = new long[CUTOFF_INDEXES];
+    // nodes searched and milliseconds since the start of the search when each
+    // iteration completed, indexed by depth, 0 for iterations that did not complete
+    final long[] iterationNodes = new long[Engine.MAX_DEPTH + 1];
+    final long[] iterationMillis = new long[Engine.MAX_DEPTH + 1];
+    int completedDepth;
+    // time the whole search took, set by the engine
+    long elapsedMillis;
+
+    public SearchStats() {
+    }
+
+    public void reset() {
+        nodes = 0;
+        quiescenceNodes = 0;
+        leafEvaluations = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        ttStores = 0;
+        ttOverwrites = 0;
+        databaseHits = 0;
+        Arrays.fill(cutoffs, 0);
+        Arrays.fill(iterationNodes, 0);
+        Arrays.fill(iterationMillis, 0);
+        completedDepth = 0;
+        elapsedMillis = 0;
+    }
+
+    // adds the counters of other, iterations are not added up since they only
+    // mean something for a single searcher
+    public void add(SearchStats other) {
+        nodes += other.nodes;
+        quiescenceNodes += other.quiescenceNodes;
+        leafEvaluations += other.leafEvaluations;
+        ttProbes += other.ttProbes;
+        ttHits += other.ttHits;
+        ttStores += other.ttStores;
+        ttOverwrites += other.ttOverwrites;
+        databaseHits += other.databaseHits;
+        for (int i = 0; i < CUTOFF_INDEXES; i++) {
+            cutoffs[i] += other.cutoffs[i];
+        }
+    }
+
+    // takes the iterations of other, normally those of the main searcher
+    public void setIterations(SearchStats other) {
+        System.arraycopy(other.iterationNodes, 0, iterationNodes, 0, iterationNodes.length);
+        System.arraycopy(other.iterationMillis, 0, iterationMillis, 0, iterationMillis.length);
+        completedDepth = other.completedDepth;
+    }
+
+    // records an iteration that completed after nodes and millis since the start of the search
+    void completeIteration(int depth, long nodes, long millis) {
+        iterationNodes[depth] = nodes;
+        iterationMillis[depth] = millis;
+        completedDepth = depth;
+    }
+
+    // counts a beta cutoff by the move at the given index of the ordered moves
+    void countCutoff(int index) {
+        cutoffs[Math.min(index, CUTOFF_INDEXES - 1)]++;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public long getTtProbes() {
+        return ttProbes;
+    }
+
+    public long getTtHits() {
+        return ttHits;
+    }
+
+    public long getTtStores() {
+        return ttStores;
+    }
+
+    // stores that replaced the entry of another position
+    public long getTtOverwrites() {
+        return ttOverwrites;
+    }
+
+    public double getTtHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    public long getDatabaseHits() {
+        return databaseHits;
+    }
+
+    public long getCutoffs() {
+        long total = 0;
+        for (long count : cutoffs) {
+            total += count;
+        }
+        return total;
+    }
+
+    // cutoffs caused by the move at the given index, the last index counts all later moves too
+    public long getCutoffs(int index) {
+        return cutoffs[Math.min(index, CUTOFF_INDEXES - 1)];
+    }
+
+    // share of the beta cutoffs that came from the first move searched,
+    // the closer to 1 the better the move ordering
+    public double getFirstMoveCutoffRate() {
+        long total = getCutoffs();
+        return total == 0 ? 0 : (double) cutoffs[0] / total;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    // nodes searched by the iteration of the given depth alone
+    public long getIterationNodes(int depth) {
+        if (depth < 1 || depth > completedDepth)
+            return 0;
+        return iterationNodes[depth] - iterationNodes[depth - 1];
+    }
+
+    // milliseconds the iteration of the given depth took
+    public long getIterationMillis(int depth) {
+        if (depth < 1 || depth > completedDepth)
+            return 0;
+        return iterationMillis[depth] - iterationMillis[depth - 1];
+    }
+
+    // effective branching factor of an iteration: how many times more nodes
+    // it took than the one before, 0 if that is not known
+    public double getBranchingFactor(int depth) {
+        long previous = getIterationNodes(depth - 1);
+        return previous == 0 ? 0 : (double) getIterationNodes(depth) / previous;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getNodesPerSecond() {
+        return nodes * 1000 / Math.max(1, elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT,
+                "nodes %d (%d quiescence), %d nodes/s, %d leaf evals%n"
+                        + "tt probes %d, hit rate %.3f, stores %d, overwrites %d%n"
+                        + "cutoffs %d, first move %.3f, by move index",
+                nodes, quiescenceNodes, getNodesPerSecond(), leafEvaluations,
+                ttProbes, getTtHitRate(), ttStores, ttOverwrites,
+                getCutoffs(), getFirstMoveCutoffRate()));
+        for (long count : cutoffs) {
+            builder.append(' ').append(count);
+        }
+        for (int depth = 1; depth <= completedDepth; depth++) {
+            builder.append(String.format(Locale.ROOT, "%ndepth %2d: %10d nodes %6d ms  ebf %.2f",
+                    depth, getIterationNodes(depth), getIterationMillis(depth), getBranchingFactor(depth)));
+        }
+        return builder.toString();
+    }
+}
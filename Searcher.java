@@ -0,0 +1,733 @@
+import java.util.Arrays;
+
+// One thread of the engine's search. Every searcher has its own board and
+// move stacks and they all share the engine's transposition table, so several
+// searchers working on the same root help each other through the table (lazy SMP)
+public class Searcher {
+    // deepest ply the search can reach
+    static final int MAX_PLY = 64;
+    // nodes searched between checks of the limits
+    private static final int CHECK_INTERVAL = 1024;
+    // move ordering scores, from the first move tried to the last
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 29;
+    private static final int KILLER_SCORE = 1 << 28;
+    // history scores are halved once one of them gets this large
+    private static final int MAX_HISTORY = 1 << 24;
+    // bounds of a full window search
+    private static final int INFINITY = Integer.MAX_VALUE;
+    // half width of the first aspiration window around the last iteration's score,
+    // a quarter of a man, and the widest window before searching the full window
+    private static final int ASPIRATION_WINDOW = 5;
+    private static final int MAX_ASPIRATION_WINDOW = 160;
+    // returned for a move that was not searched, below any score
+    static final int PRUNED = Integer.MIN_VALUE;
+
+    private final Engine engine;
+    private final TranspositionTable transpositionTable;
+    // 0 for the main searcher, which is the one that enforces the limits
+    private final int id;
+    private ProtoBoard protoBoard;
+    // endgame databases of the current search, null if there are none
+    private EndgameDatabase database;
+    // selective search switches of the current search
+    private SearchOptions options;
+    // legal moves of every ply of the current line, reused across searches
+    private final int[][] moveStack;
+    // ordering score of every move in moveStack
+    private final int[][] scoreStack;
+    private int rootCount;
+    // root moves searched for an exact score and line, the best one alone unless
+    // the engine asks for more
+    private int multiPv;
+    // scores of the first multiPv root moves in the current iteration
+    private final int[] rootScores;
+    // two quiet moves per ply that recently caused a beta cutoff
+    private final int[][] killers;
+    // how often each quiet move (side, from square and direction) caused a cutoff,
+    // weighted by depth
+    private final int[][] history;
+
+    // result of the deepest completed iteration
+    private int completedDepth;
+    private int bestMove;
+    private int eval;
+    // score of the last root search, only a bound if it fell outside the window
+    private int rootValue;
+    // best root moves of the deepest completed iteration with their lines, best first
+    private PrincipalVariation[] lines = new PrincipalVariation[0];
+
+    // counters of the current search, nodes among them
+    private final SearchStats stats = new SearchStats();
+    // when the current search started and when to check the limits next
+    private long startTime;
+    private long nextCheck;
+    // set when the search has to be abandoned
+    private boolean stopped;
+    // splits nodes between threads in YBWC mode, null otherwise
+    private YbwcSearch splitter;
+    // split node the searcher is working below for YbwcSearch, null for the main
+    // searcher, and the index of the move of it that it searches
+    private YbwcSearch.Split split;
+    private int splitIndex;
+    // nodes of the moves of the splits of this searcher's nodes, counted the way
+    // the splitter counts them
+    private long splitNodes;
+
+    public Searcher(Engine engine, TranspositionTable transpositionTable, int id) {
+        this.engine = engine;
+        this.transpositionTable = transpositionTable;
+        this.id = id;
+        moveStack = new int[MAX_PLY][ProtoBoard.MAX_MOVES];
+        scoreStack = new int[MAX_PLY][ProtoBoard.MAX_MOVES];
+        rootScores = new int[ProtoBoard.MAX_MOVES];
+        killers = new int[MAX_PLY][2];
+        history = new int[2][32 * 4];
+    }
+
+    // prepares a search of the position on protoBoard, which must not be
+    // used by any other thread while the search runs
+    public void reset(ProtoBoard protoBoard, int[] rootMoves, int rootCount) {
+        this.protoBoard = protoBoard;
+        this.rootCount = rootCount;
+        multiPv = Math.min(engine.getMultiPv(), rootCount);
+        database = engine.getEndgameDatabase();
+        options = engine.getSearchOptions();
+        System.arraycopy(rootMoves, 0, moveStack[0], 0, rootCount);
+        // helpers start with a different root move so the threads spread out
+        for (int i = 0; i < id % rootCount; i++) {
+            int first = moveStack[0][0];
+            System.arraycopy(moveStack[0], 1, moveStack[0], 0, rootCount - 1);
+            moveStack[0][rootCount - 1] = first;
+        }
+        completedDepth = 0;
+        bestMove = PackedMove.NONE;
+        eval = Integer.MIN_VALUE;
+        lines = new PrincipalVariation[0];
+        stats.reset();
+        splitNodes = 0;
+        startTime = System.currentTimeMillis();
+        nextCheck = CHECK_INTERVAL;
+        stopped = false;
+        splitter = null;
+        split = null;
+        // killers belong to the previous position, history is only aged
+        for (int[] plyKillers : killers) {
+            plyKillers[0] = PackedMove.NONE;
+            plyKillers[1] = PackedMove.NONE;
+        }
+        ageHistory();
+    }
+
+    // prepares the searcher to search moves of split nodes for splitter, the counters start from 0
+    void prepareSplits(YbwcSearch splitter) {
+        this.splitter = splitter;
+        database = engine.getEndgameDatabase();
+        options = engine.getSearchOptions();
+        stats.reset();
+        splitNodes = 0;
+        startTime = System.currentTimeMillis();
+        nextCheck = CHECK_INTERVAL;
+        ageHistory();
+    }
+
+    // the main searcher splits nodes with splitter from now on
+    void setSplitter(YbwcSearch splitter) {
+        this.splitter = splitter;
+    }
+
+    // searches the i-th move of a node split by YbwcSearch. protoBoard is a copy
+    // of the node's board and ply its distance from the root. Returns PRUNED when
+    // the move was not searched or the search was abandoned because the engine
+    // stopped or a sibling of split, or of a split above it, caused a cutoff
+    int searchSplitMove(ProtoBoard protoBoard, YbwcSearch.Split split, int i, int move, int moveScore,
+                        int n, int ply, int a, int b, int color, boolean selective, int staticEval) {
+        this.protoBoard = protoBoard;
+        this.split = split;
+        splitIndex = i;
+        stopped = isAborted();
+        int value = PRUNED;
+        if (!stopped)
+            value = searchMove(i, move, moveScore, n, ply, a, b, color, selective, staticEval);
+        this.split = null;
+        // the result of an abandoned search is of no use
+        return stopped ? PRUNED : value;
+    }
+
+    // whether the current search has to be abandoned
+    private boolean isAborted() {
+        return engine.shouldStop(this) || (split != null && split.isCutOff(splitIndex));
+    }
+
+    // takes the killers and history of owner, whose split this searcher is about
+    // to search a move of, and empties the table if asked to. owner waits for
+    // the split, so they are the same in every run
+    void inheritTables(Searcher owner, boolean clearTable) {
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            killers[ply][0] = owner.killers[ply][0];
+            killers[ply][1] = owner.killers[ply][1];
+        }
+        for (int side = 0; side < history.length; side++) {
+            System.arraycopy(owner.history[side], 0, history[side], 0, history[side].length);
+        }
+        if (clearTable)
+            transpositionTable.clear();
+    }
+
+    // iterative deepening loop, runs until the engine says to stop
+    // helpers are staggered so that half of them search one ply deeper
+    public void search(int color, int maxDepth) {
+        int stableIterations = 0;
+        for (int depth = 1 + id % 2; depth <= maxDepth; depth++) {
+            IterationEvent event = new IterationEvent();
+            event.begin();
+            // with several lines every pass searches the root moves the passes
+            // before it did not pick, so the k-th pass finds the k-th best move.
+            // Later passes find most of their positions in the table already
+            for (int k = 0; k < multiPv; k++) {
+                boolean previous = completedDepth > 0 && k < lines.length;
+                rootScores[k] = aspirationSearch(depth, color, k, previous ? lines[k].getScore() : 0, previous);
+                if (stopped)
+                    break;
+            }
+            // only completed iterations can be trusted
+            if (stopped)
+                break;
+            rankLines();
+            int iterationBest = moveStack[0][0];
+            stableIterations = iterationBest == bestMove ? stableIterations + 1 : 0;
+            bestMove = iterationBest;
+            eval = rootScores[0];
+            completedDepth = depth;
+            lines = new PrincipalVariation[multiPv];
+            for (int k = 0; k < multiPv; k++) {
+                lines[k] = extractLine(moveStack[0][k], rootScores[k], depth);
+            }
+            stats.completeIteration(depth, stats.nodes + splitNodes, System.currentTimeMillis() - startTime);
+            if (event.shouldCommit()) {
+                event.searcher = id;
+                event.depth = depth;
+                event.bestMove = ProtoBoard.toNotation(bestMove);
+                event.eval = eval;
+                event.nodes = stats.getIterationNodes(depth);
+                event.branchingFactor = stats.getBranchingFactor(depth);
+                event.commit();
+            }
+            if (!engine.continueSearch(this, stableIterations))
+                break;
+        }
+    }
+
+    // searches the root moves from index first on and returns the best score,
+    // with the best move moved to index first. The score rarely moves far between
+    // iterations, so when there is a score of the last iteration to start from a
+    // narrow window around it is searched and widened when the score falls outside
+    private int aspirationSearch(int depth, int color, int first, int previousScore, boolean previous) {
+        int window = ASPIRATION_WINDOW;
+        int a = -INFINITY;
+        int b = INFINITY;
+        if (previous && Math.abs(previousScore) < Engine.DATABASE_WIN / 2) {
+            a = previousScore - window;
+            b = previousScore + window;
+        }
+        while (true) {
+            searchRoot(depth, color, first, a, b);
+            if (stopped)
+                break;
+            if (rootValue <= a && a > -INFINITY) {
+                window *= 2;
+                a = window > MAX_ASPIRATION_WINDOW ? -INFINITY : rootValue - window;
+            }
+            else if (rootValue >= b && b < INFINITY) {
+                window *= 2;
+                b = window > MAX_ASPIRATION_WINDOW ? INFINITY : rootValue + window;
+            }
+            else
+                break;
+        }
+        return rootValue;
+    }
+
+    // searches the root moves from index first on to the given depth with principal
+    // variation search. The best move is moved to index first, so the next
+    // iteration searches it first
+    private void searchRoot(int depth, int color, int first, int a, int b) {
+        int[] moves = moveStack[0];
+        int alphaOrig = a;
+        int best = first;
+        int value = -INFINITY;
+        int[] values = null;
+        for (int i = first; i < rootCount; i++) {
+            int currentValue;
+            if (values != null)
+                currentValue = values[i];
+            // with the first move searched YBWC searches the others at the same time
+            else if (i == first + 1 && splitter != null && depth >= splitter.getSplitDepth()) {
+                values = splitter.split(this, protoBoard, split, splitIndex, moves, null, i, rootCount,
+                        depth, 0, a, b, color, false, 0);
+                stopped = isAborted();
+                if (stopped)
+                    return;
+                currentValue = values[i];
+            }
+            else {
+                currentValue = searchMove(i - first, moves[i], 0, depth, 0, a, b, color, false, 0);
+                if (stopped)
+                    return;
+            }
+            if (currentValue == PRUNED)
+                continue;
+            if (currentValue > value) {
+                value = currentValue;
+                best = i;
+            }
+            a = Math.max(a, value);
+            if (a >= b)
+                break;
+        }
+        rootValue = value;
+        // when every move failed low the best one is only a guess, keep the order
+        if (value <= alphaOrig)
+            return;
+        int move = moves[best];
+        System.arraycopy(moves, first, moves, first + 1, best - first);
+        moves[first] = move;
+    }
+
+    // sorts the first multiPv root moves by their scores, a later pass can
+    // find a better score than an earlier one when the table helps it see deeper
+    private void rankLines() {
+        int[] moves = moveStack[0];
+        for (int i = 1; i < multiPv; i++) {
+            int move = moves[i];
+            int score = rootScores[i];
+            int j = i;
+            for (; j > 0 && rootScores[j - 1] < score; j--) {
+                moves[j] = moves[j - 1];
+                rootScores[j] = rootScores[j - 1];
+            }
+            moves[j] = move;
+            rootScores[j] = score;
+        }
+    }
+
+    // the line of play after a root move, following the moves stored in the
+    // table for as long as they are legal and do not repeat a position
+    private PrincipalVariation extractLine(int rootMove, int score, int depth) {
+        int[] line = new int[depth];
+        int[] legalMoves = moveStack[MAX_PLY - 1];
+        line[0] = rootMove;
+        protoBoard.makeMove(rootMove);
+        int length = 1;
+        while (length < depth && !protoBoard.isRepetition()) {
+            long ttEntry = transpositionTable.probe(protoBoard.getZobristHash());
+            int move = ttEntry != 0 ? TranspositionTable.getMove(ttEntry) : PackedMove.NONE;
+            if (move == PackedMove.NONE)
+                break;
+            int count = protoBoard.generateMoves(protoBoard.getSideToMove(), legalMoves);
+            boolean legal = false;
+            for (int i = 0; i < count && !legal; i++) {
+                legal = legalMoves[i] == move;
+            }
+            if (!legal)
+                break;
+            protoBoard.makeMove(move);
+            line[length++] = move;
+        }
+        for (int i = 0; i < length; i++) {
+            protoBoard.unmakeMove();
+        }
+        return new PrincipalVariation(Arrays.copyOf(line, length), score, depth);
+    }
+
+    // searches the i-th move of a node n plies from the horizon with window (a, b)
+    // and returns its score for the node, or PRUNED if it is not worth searching.
+    // In a selective node late quiet moves are pruned near the horizon and reduced
+    // elsewhere, unless a reduced search finds them good
+    private int searchMove(int i, int move, int moveScore, int n, int ply, int a, int b, int color,
+                           boolean selective, int staticEval) {
+        boolean quiet = selective && !protoBoard.isPromotion(move);
+        // one ply from the horizon one quiet move cannot make up for a large deficit
+        if (quiet && i > 0 && n == 1 && options.isFutilityPruning()
+                && staticEval + options.getFutilityMargin() <= a)
+            return PRUNED;
+        // late quiet man moves are searched less deep unless they turn out to be good
+        int reduction = 0;
+        if (quiet && options.isLateMoveReductions() && n >= options.getReductionDepth()
+                && i >= options.getReductionMoves() && moveScore < KILLER_SCORE
+                && (protoBoard.getKings() & (1 << PackedMove.getFrom(move))) == 0)
+            reduction = i >= 2 * options.getReductionMoves() && n >= 6 ? 2 : 1;
+        protoBoard.makeMove(move);
+        int childValue;
+        if (reduction > 0) {
+            childValue = -negamax(Math.max(0, n - 1 - reduction), ply + 1, -a - 1, -a, -color);
+            if (childValue > a && !stopped)
+                childValue = searchChild(i, n - 1, ply + 1, a, b, -color);
+        }
+        else
+            childValue = searchChild(i, n - 1, ply + 1, a, b, -color);
+        protoBoard.unmakeMove();
+        return childValue;
+    }
+
+    // searches the child reached by the i-th move of a node with window (a, b)
+    // and returns its score for the parent. The first move gets the full window,
+    // the others are expected to be worse and only have to be proven so by a
+    // null window search, which is repeated with the full window if it fails high
+    private int searchChild(int i, int n, int ply, int a, int b, int color) {
+        if (i == 0)
+            return -negamax(n, ply, -b, -a, color);
+        int value = -negamax(n, ply, -a - 1, -a, color);
+        if (value > a && value < b && !stopped)
+            value = -negamax(n, ply, -b, -a, color);
+        return value;
+    }
+
+    // recursive method implements negamax with alpha beta pruning,
+    // principal variation search and a transposition table
+    private int negamax(int n, int ply, int a, int b, int color){
+        if (++stats.nodes >= nextCheck) {
+            nextCheck = stats.nodes + CHECK_INTERVAL;
+            stopped = isAborted();
+        }
+        if (stopped)
+            return 0;
+        // a repeated position is a draw, there is no need to search the cycle again
+        if (protoBoard.isRepetition()
+                || (options.getDrawPlies() > 0 && protoBoard.getReversibleMoves() >= options.getDrawPlies()))
+            return 0;
+        // positions in the endgame database are known exactly, no need to search them
+        if (database != null) {
+            int stored = database.probe(protoBoard);
+            if (stored != EndgameDatabase.UNKNOWN) {
+                stats.databaseHits++;
+                if (stored > 0)
+                    return Engine.DATABASE_WIN - stored;
+                else if (stored < 0)
+                    return -Engine.DATABASE_WIN - stored;
+                return 0;
+            }
+        }
+        // at the horizon only the captures that are pending are searched
+        if (n == 0)
+            return quiesce(ply, a, b, color);
+        int alphaOrig = a;
+        // get the hash key of current position
+        long key = protoBoard.getZobristHash();
+        long ttEntry = probe(key);
+        int hashMove = ttEntry != 0 ? TranspositionTable.getMove(ttEntry) : PackedMove.NONE;
+        // check if position is in transposition table, and return
+        if(ttEntry != 0 && TranspositionTable.getDepth(ttEntry) >= n){
+            int ttValue = TranspositionTable.getScore(ttEntry);
+            int bound = TranspositionTable.getBound(ttEntry);
+            if(bound == TranspositionTable.EXACT)
+                return ttValue;
+            else if(bound == TranspositionTable.LOWER)
+                a = Math.max(a, ttValue);
+            else if(bound == TranspositionTable.UPPER)
+                b = Math.min(b, ttValue);
+            if (a >= b)
+                return ttValue;
+        }
+
+        // generate legal moves
+        int[] legalMoves = moveStack[ply];
+        int count = protoBoard.generateMoves(color, legalMoves);
+
+        // if there are no legal moves return an evaluation proportional to
+        // how far away that situation is
+        if (count == 0){
+            return n * -1000000;
+        }
+
+        // selective search only in null window nodes away from won and lost scores,
+        // and only where the side to move has no capture that could change the score
+        boolean selective = b - a == 1 && Math.abs(a) < Engine.DATABASE_WIN / 2
+                && !PackedMove.isCapture(legalMoves[0]);
+        int staticEval = selective ? color * engine.evaluatePosition(protoBoard) : 0;
+        if (selective && n <= 2) {
+            // so far above beta that the opponent will not get back in one or two moves
+            if (options.isFutilityPruning() && staticEval - options.getFutilityMargin() * n >= b)
+                return staticEval;
+            if (options.isRazoring() && n == 2 && staticEval + options.getRazorMargin() <= a)
+                n = 1;
+        }
+        // a shallow search that beats beta by a margin predicts the deep one fails high too
+        if (selective && options.isProbCut() && n >= options.getProbCutDepth()) {
+            int probCutBeta = b + options.getProbCutMargin();
+            int probCutValue = negamax(Math.max(0, n - options.getProbCutReduction()), ply, probCutBeta - 1, probCutBeta, color);
+            if (stopped)
+                return 0;
+            if (probCutValue >= probCutBeta)
+                return b;
+            // the shallow search used this ply's move list
+            count = protoBoard.generateMoves(color, legalMoves);
+        }
+
+        // set value to baseline 0
+        int value = Integer.MIN_VALUE;
+        int best = PackedMove.NONE;
+        scoreMoves(legalMoves, scoreStack[ply], count, hashMove, ply, color);
+
+        // goes through each legal move, best ordered first, and recurs
+        int[] values = null;
+        for (int i = 0; i < count; i++) {
+            int move;
+            int childValue;
+            if (values != null) {
+                move = legalMoves[i];
+                childValue = values[i];
+            }
+            // with the eldest move searched YBWC searches the others at the same time
+            else if (i == 1 && splitter != null && n >= splitter.getSplitDepth()) {
+                for (int j = i; j < count; j++) {
+                    nextMove(legalMoves, scoreStack[ply], j, count);
+                }
+                values = splitter.split(this, protoBoard, split, splitIndex, legalMoves, scoreStack[ply], i, count,
+                        n, ply, a, b, color, selective, staticEval);
+                stopped = isAborted();
+                if (stopped)
+                    return 0;
+                move = legalMoves[i];
+                childValue = values[i];
+            }
+            else {
+                move = nextMove(legalMoves, scoreStack[ply], i, count);
+                childValue = searchMove(i, move, scoreStack[ply][i], n, ply, a, b, color, selective, staticEval);
+                // the result of an abandoned search must not reach the table
+                if (stopped)
+                    return 0;
+            }
+            if (childValue == PRUNED)
+                continue;
+            if (childValue > value) {
+                value = childValue;
+                best = move;
+            }
+            a = Math.max(a, value);
+            if (a >= b) {
+                stats.countCutoff(i);
+                if (!PackedMove.isCapture(move))
+                    updateQuietCutoff(move, n, ply, color);
+                break;
+            }
+        }
+
+        // stores current position in transposition table
+        int bound;
+        if(value <= alphaOrig)
+            bound = TranspositionTable.UPPER;
+        else if(value >= b)
+            bound = TranspositionTable.LOWER;
+        else
+            bound = TranspositionTable.EXACT;
+        store(key, value, n, bound, best);
+
+        return value;
+    }
+
+    // searches the captures left at the horizon until the position is quiet, so
+    // that it is never evaluated in the middle of an exchange. Captures are
+    // compulsory, so the side to move can only stand pat when it has none
+    private int quiesce(int ply, int a, int b, int color) {
+        if (++stats.nodes >= nextCheck) {
+            nextCheck = stats.nodes + CHECK_INTERVAL;
+            stopped = isAborted();
+        }
+        if (stopped)
+            return 0;
+        stats.quiescenceNodes++;
+        int[] captures = moveStack[ply];
+        int count = protoBoard.generateMoves(color, captures);
+        // no legal moves loses, just beyond the horizon
+        if (count == 0)
+            return -1000000;
+        if (!PackedMove.isCapture(captures[0]) || ply >= MAX_PLY - 1) {
+            stats.leafEvaluations++;
+            return color * engine.evaluatePosition(protoBoard);
+        }
+
+        int alphaOrig = a;
+        long key = protoBoard.getZobristHash();
+        long ttEntry = probe(key);
+        int hashMove = PackedMove.NONE;
+        // any entry is at least as deep as the quiescence search
+        if (ttEntry != 0) {
+            hashMove = TranspositionTable.getMove(ttEntry);
+            int ttValue = TranspositionTable.getScore(ttEntry);
+            int bound = TranspositionTable.getBound(ttEntry);
+            if (bound == TranspositionTable.EXACT)
+                return ttValue;
+            else if (bound == TranspositionTable.LOWER)
+                a = Math.max(a, ttValue);
+            else if (bound == TranspositionTable.UPPER)
+                b = Math.min(b, ttValue);
+            if (a >= b)
+                return ttValue;
+        }
+
+        int value = Integer.MIN_VALUE;
+        int best = PackedMove.NONE;
+        scoreMoves(captures, scoreStack[ply], count, hashMove, ply, color);
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(captures, scoreStack[ply], i, count);
+            protoBoard.makeMove(move);
+            int childValue = -quiesce(ply + 1, -b, -a, -color);
+            protoBoard.unmakeMove();
+            if (stopped)
+                return 0;
+            if (childValue > value) {
+                value = childValue;
+                best = move;
+            }
+            a = Math.max(a, value);
+            if (a >= b)
+                break;
+        }
+
+        // quiescence results are stored as depth 0 entries, which must not
+        // replace what a deeper search found about the position
+        if (ttEntry == 0) {
+            int bound;
+            if (value <= alphaOrig)
+                bound = TranspositionTable.UPPER;
+            else if (value >= b)
+                bound = TranspositionTable.LOWER;
+            else
+                bound = TranspositionTable.EXACT;
+            store(key, value, 0, bound, best);
+        }
+        return value;
+    }
+
+    // looks the position up in the transposition table, counting probes and hits
+    private long probe(long key) {
+        stats.ttProbes++;
+        long ttEntry = transpositionTable.probe(key);
+        // in deterministic YBWC the tables of the searchers that wait for this one are read too
+        for (YbwcSearch.Split s = split; ttEntry == 0 && s != null; s = s.parent) {
+            if (s.table != null)
+                ttEntry = s.table.probe(key);
+        }
+        if (ttEntry != 0)
+            stats.ttHits++;
+        return ttEntry;
+    }
+
+    // stores the position in the transposition table, counting stores and
+    // the entries of other positions they replaced
+    private void store(long key, int score, int depth, int bound, int move) {
+        stats.ttStores++;
+        if (transpositionTable.store(key, score, depth, bound, move))
+            stats.ttOverwrites++;
+    }
+
+    // gives every move an ordering score: the hash move first, then captures taking
+    // the most pieces, then the killer moves and then the rest by their history
+    private void scoreMoves(int[] moves, int[] scores, int count, int hashMove, int ply, int color) {
+        int[] sideHistory = history[color > 0 ? 0 : 1];
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == hashMove)
+                scores[i] = HASH_MOVE_SCORE;
+            else if (PackedMove.isCapture(move))
+                scores[i] = CAPTURE_SCORE + PackedMove.getJumps(move);
+            else if (move == killers[ply][0])
+                scores[i] = KILLER_SCORE + 1;
+            else if (move == killers[ply][1])
+                scores[i] = KILLER_SCORE;
+            else
+                scores[i] = sideHistory[historyIndex(move)];
+        }
+    }
+
+    // moves the best scored of the remaining moves to index i and returns it
+    private static int nextMove(int[] moves, int[] scores, int i, int count) {
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (scores[j] > scores[best])
+                best = j;
+        }
+        int move = moves[best];
+        int score = scores[best];
+        moves[best] = moves[i];
+        scores[best] = scores[i];
+        moves[i] = move;
+        scores[i] = score;
+        return move;
+    }
+
+    // remembers a quiet move that caused a beta cutoff
+    private void updateQuietCutoff(int move, int n, int ply, int color) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] sideHistory = history[color > 0 ? 0 : 1];
+        int index = historyIndex(move);
+        sideHistory[index] += n * n;
+        if (sideHistory[index] > MAX_HISTORY)
+            ageHistory();
+    }
+
+    public void clearHistory() {
+        for (int[] sideHistory : history) {
+            Arrays.fill(sideHistory, 0);
+        }
+    }
+
+    // halves all history scores so recent cutoffs count more than old ones
+    private void ageHistory() {
+        for (int[] sideHistory : history) {
+            for (int i = 0; i < sideHistory.length; i++) {
+                sideHistory[i] /= 2;
+            }
+        }
+    }
+
+    // a quiet move is identified by its square and direction
+    private static int historyIndex(int move) {
+        return PackedMove.getFrom(move) * 4 + PackedMove.getDirection(move, 0);
+    }
+
+    TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getEval() {
+        return eval;
+    }
+
+    // best root moves of the deepest completed iteration with their lines, best first
+    public PrincipalVariation[] getLines() {
+        return lines;
+    }
+
+    public long getNodes() {
+        return stats.nodes;
+    }
+
+    long getSplitNodes() {
+        return splitNodes;
+    }
+
+    void addSplitNodes(long nodes) {
+        splitNodes += nodes;
+    }
+
+    public SearchStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,138 @@
+// Fixed size transposition table. Entries are two longs, the zobrist key and the
+// packed data, and four entries form a 64 byte bucket. A position may be stored
+// in any slot of its bucket and the slot to replace is picked by depth and by the
+// age of the search that wrote it. Subclasses decide where the longs are kept:
+// HeapTranspositionTable in a long array, OffHeapTranspositionTable outside the
+// heap, optionally in a file
+//
+// The table is shared by all search threads without locking. The key is stored
+// xored with the data, so an entry torn by two threads writing at once no
+// longer matches its key and is treated as a miss
+//
+// Packed data layout:
+//   bits 0-26  : best move (PackedMove, NONE if there is none)
+//   bits 27-32 : depth
+//   bits 33-34 : bound (UPPER, LOWER or EXACT)
+//   bits 35-37 : generation of the search that stored the entry
+//   bits 38-63 : score, signed
+public abstract class TranspositionTable {
+    public static final int UPPER = 1;
+    public static final int LOWER = 2;
+    public static final int EXACT = 3;
+
+    private static final int SLOTS = 4;
+    // longs in a bucket and bytes in a bucket
+    static final int BUCKET_LONGS = SLOTS * 2;
+    static final int BUCKET_BYTES = BUCKET_LONGS * 8;
+    private static final int DEPTH_SHIFT = 27;
+    private static final int BOUND_SHIFT = 33;
+    private static final int AGE_SHIFT = 35;
+    private static final int SCORE_SHIFT = 38;
+    private static final int AGES = 8;
+
+    private final long bucketMask;
+    // generation of the current search, stored in every entry it writes
+    private int generation;
+
+    // buckets must be a power of two
+    protected TranspositionTable(long buckets) {
+        bucketMask = buckets - 1;
+    }
+
+    // the most buckets that fit in the given number of megabytes, a power of two
+    static long buckets(long megabytes) {
+        return Long.highestOneBit(Math.max(1, (megabytes << 20) / BUCKET_BYTES));
+    }
+
+    // the long at index, counted from the start of the first bucket
+    abstract long read(long index);
+
+    abstract void write(long index, long value);
+
+    // sets every long of the table to 0
+    abstract void clearEntries();
+
+    public long getBuckets() {
+        return bucketMask + 1;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    protected void setGeneration(int generation) {
+        this.generation = generation % AGES;
+    }
+
+    // starts a new search so that entries of older searches are replaced first
+    public void newSearch() {
+        setGeneration(generation + 1);
+    }
+
+    public void clear() {
+        clearEntries();
+        setGeneration(0);
+    }
+
+    // returns the packed data stored for key, or 0 if the position is not in the table
+    public long probe(long key) {
+        long bucket = (key & bucketMask) * BUCKET_LONGS;
+        for (long i = bucket; i < bucket + BUCKET_LONGS; i += 2) {
+            long data = read(i + 1);
+            if ((read(i) ^ data) == key && data != 0)
+                return data;
+        }
+        return 0;
+    }
+
+    // returns whether the entry of another position was overwritten
+    public boolean store(long key, int score, int depth, int bound, int move) {
+        long bucket = (key & bucketMask) * BUCKET_LONGS;
+        long replace = bucket;
+        int replaceWorth = Integer.MAX_VALUE;
+        boolean overwrite = true;
+        for (long i = bucket; i < bucket + BUCKET_LONGS; i += 2) {
+            long data = read(i + 1);
+            boolean sameKey = (read(i) ^ data) == key;
+            // same position, keep its move if we do not have a better one
+            if (sameKey || data == 0) {
+                if (move == PackedMove.NONE && sameKey)
+                    move = getMove(data);
+                replace = i;
+                overwrite = false;
+                break;
+            }
+            // prefer replacing shallow entries left over from older searches
+            int age = (generation - ((int) (data >>> AGE_SHIFT) & (AGES - 1)) + AGES) % AGES;
+            int worth = getDepth(data) - 8 * age;
+            if (worth < replaceWorth) {
+                replaceWorth = worth;
+                replace = i;
+            }
+        }
+        long data = ((long) score << SCORE_SHIFT)
+                | ((long) generation << AGE_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) depth << DEPTH_SHIFT)
+                | move;
+        write(replace, key ^ data);
+        write(replace + 1, data);
+        return overwrite;
+    }
+
+    public static int getScore(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+
+    public static int getDepth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 63;
+    }
+
+    public static int getBound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+
+    public static int getMove(long data) {
+        return (int) data & PackedMove.NONE;
+    }
+}
@@ -0,0 +1,282 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Parallel search that splits the tree between threads (Young Brothers Wait).
+// The main searcher runs its usual search on a fork/join pool. At a node at
+// least splitDepth plies from the horizon it searches the eldest move alone,
+// and once its score is known the other moves are searched at the same time as
+// tasks of the pool, each by a searcher of its own that starts out with the
+// killers and history of the node's searcher. They start from the best score
+// found so far, and when one of them causes a beta cutoff the others are
+// abandoned along with everything below them. Nodes of the tasks split again
+//
+// In deterministic mode the moves of a split are searched with the score of the
+// eldest as their bound, and a cutoff only abandons the moves after it, so the
+// node gets the score the sequential search would give it. Every task stores to
+// a private table, empty when it starts, and reads the tables of the searchers
+// that wait for it besides, which do not change until it is done. Only the nodes
+// of moves up to the first cutoff are counted. Scores, moves and node counts are
+// then the same in every run with any number of threads, which costs the time
+// the shared table would have saved
+public class YbwcSearch {
+    // how often the limits are checked while the pool searches
+    private static final long POLL_MILLIS = 2;
+    // private table of every task in deterministic mode, cleared before each one
+    private static final int PRIVATE_TT_MEGABYTES = 1;
+
+    private final Engine engine;
+    private final TranspositionTable transpositionTable;
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final boolean deterministic;
+    // searchers for the tasks, one for every task running or waiting for the
+    // tasks of its own splits, and those of them that are free
+    private final ArrayList<Searcher> searchers = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Searcher> idle = new ConcurrentLinkedQueue<>();
+    // the main searcher has id 0
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    // the searcher of the last search's root
+    private Searcher main;
+
+    // what the moves of a split node share: the best score so far and whether
+    // one of them caused a cutoff, which abandons the rest of them
+    static final class Split {
+        // the split the owner works below and the index of the move it searches there
+        final Split parent;
+        final int parentIndex;
+        // the searcher of the node, which waits for the moves
+        final Searcher owner;
+        // the owner's table in deterministic mode, which the moves read, null otherwise
+        final TranspositionTable table;
+        final AtomicInteger alpha;
+        // moves after this index are abandoned
+        final AtomicInteger cutIndex = new AtomicInteger(Integer.MAX_VALUE);
+
+        Split(Split parent, int parentIndex, Searcher owner, TranspositionTable table, int alpha) {
+            this.parent = parent;
+            this.parentIndex = parentIndex;
+            this.owner = owner;
+            this.table = table;
+            this.alpha = new AtomicInteger(alpha);
+        }
+
+        void raiseAlpha(int value) {
+            alpha.accumulateAndGet(value, Math::max);
+        }
+
+        void cut(int i) {
+            cutIndex.accumulateAndGet(i, Math::min);
+        }
+
+        // whether the search of the i-th move has been abandoned, because of a
+        // cutoff here or at one of the splits above
+        boolean isCutOff(int i) {
+            for (Split split = this; split != null; i = split.parentIndex, split = split.parent) {
+                if (split.cutIndex.get() < i)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    // one move of a split node after the eldest, searched as a fork/join task
+    private final class Sibling extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final ProtoBoard protoBoard;
+        final Split split;
+        final int i;
+        final int move;
+        final int moveScore;
+        final int n;
+        final int ply;
+        final int alpha;
+        final int beta;
+        final int color;
+        final boolean selective;
+        final int staticEval;
+        // the score for the node, PRUNED if the move was not searched to the end
+        int value = Searcher.PRUNED;
+        // nodes of the move and the moves of the splits below it
+        long nodes;
+
+        Sibling(ProtoBoard protoBoard, Split split, int i, int move, int moveScore, int n, int ply,
+                int alpha, int beta, int color, boolean selective, int staticEval) {
+            this.protoBoard = protoBoard;
+            this.split = split;
+            this.i = i;
+            this.move = move;
+            this.moveScore = moveScore;
+            this.n = n;
+            this.ply = ply;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.color = color;
+            this.selective = selective;
+            this.staticEval = staticEval;
+        }
+
+        @Override
+        protected void compute() {
+            // start from the best score of the moves done so far
+            int a = deterministic ? alpha : split.alpha.get();
+            if (a >= beta)
+                return;
+            Searcher searcher = acquire(split);
+            long start = searcher.getNodes() + searcher.getSplitNodes();
+            try {
+                value = searcher.searchSplitMove(new ProtoBoard(protoBoard), split, i, move, moveScore,
+                        n, ply, a, beta, color, selective, staticEval);
+            } finally {
+                nodes = searcher.getNodes() + searcher.getSplitNodes() - start;
+                idle.add(searcher);
+            }
+            if (value == Searcher.PRUNED)
+                return;
+            if (!deterministic)
+                split.raiseAlpha(value);
+            // in deterministic mode the moves before this one still count
+            if (value >= beta)
+                split.cut(deterministic ? i : 0);
+        }
+    }
+
+    // searches with the given number of threads, splitting nodes at least
+    // splitDepth plies from the horizon
+    public YbwcSearch(Engine engine, TranspositionTable transpositionTable, int threads, int splitDepth,
+                      boolean deterministic) {
+        this.engine = engine;
+        this.transpositionTable = transpositionTable;
+        this.splitDepth = Math.max(1, splitDepth);
+        this.deterministic = deterministic;
+        pool = new ForkJoinPool(Math.max(1, threads), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("engine-ybwc-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    public int getSplitDepth() {
+        return splitDepth;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    // lets the pool threads go
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // runs the search of main, which has been reset for the position, on the
+    // pool and enforces the limits while it runs
+    public void search(Searcher main, int color, int maxDepth) {
+        synchronized (searchers) {
+            for (Searcher searcher : searchers) {
+                searcher.prepareSplits(this);
+            }
+        }
+        this.main = main;
+        main.setSplitter(this);
+        ForkJoinTask<?> task = pool.submit(() -> main.search(color, maxDepth));
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    // the main searcher does not check them while it waits for a split
+                    engine.shouldStop(main);
+                } catch (InterruptedException e) {
+                    // the search still has to wind down before its results can be read
+                    engine.stop();
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    // searches moves from..to-1 of a node of owner at the same time and returns
+    // their scores at the same indexes, PRUNED for those not searched to the end.
+    // The owner searches the parentIndex-th move of parent, or parent is null.
+    // The moves are ordered and the eldest has raised a to its score. protoBoard
+    // is the owner's board, which stays at the node. The nodes of the moves are
+    // added to the owner's split nodes
+    int[] split(Searcher owner, ProtoBoard protoBoard, Split parent, int parentIndex, int[] moves, int[] scores,
+                int from, int to, int n, int ply, int a, int b, int color, boolean selective, int staticEval) {
+        Split split = new Split(parent, parentIndex, owner, deterministic ? owner.getTranspositionTable() : null, a);
+        Sibling[] siblings = new Sibling[to - from];
+        for (int i = from; i < to; i++) {
+            siblings[i - from] = new Sibling(protoBoard, split, i, moves[i], scores == null ? 0 : scores[i],
+                    n, ply, a, b, color, selective, staticEval);
+        }
+        ForkJoinTask.invokeAll(siblings);
+        int[] values = new int[to];
+        long nodes = 0;
+        boolean cutoff = false;
+        for (int i = from; i < to; i++) {
+            values[i] = siblings[i - from].value;
+            if (!cutoff || !deterministic)
+                nodes += siblings[i - from].nodes;
+            cutoff |= values[i] != Searcher.PRUNED && values[i] >= b;
+        }
+        owner.addSplitNodes(nodes);
+        return values;
+    }
+
+    // a free searcher for a move of split, with the killers and history of the
+    // split's owner, and in deterministic mode nothing else of what it searched before
+    private Searcher acquire(Split split) {
+        Searcher searcher = idle.poll();
+        if (searcher == null) {
+            searcher = new Searcher(engine, deterministic
+                    ? new HeapTranspositionTable(PRIVATE_TT_MEGABYTES) : transpositionTable, nextId.getAndIncrement());
+            searcher.prepareSplits(this);
+            synchronized (searchers) {
+                searchers.add(searcher);
+            }
+        }
+        searcher.inheritTables(split.owner, deterministic);
+        return searcher;
+    }
+
+    // nodes the tasks have searched since the search started
+    public long countNodes() {
+        long nodes = 0;
+        synchronized (searchers) {
+            for (Searcher searcher : searchers) {
+                nodes += searcher.getNodes();
+            }
+        }
+        return nodes;
+    }
+
+    // counters of the tasks of the last search, with the nodes counted as
+    // deterministic mode counts them
+    public SearchStats getStats() {
+        SearchStats stats = new SearchStats();
+        synchronized (searchers) {
+            for (Searcher searcher : searchers) {
+                stats.add(searcher.getStats());
+            }
+        }
+        if (main != null)
+            stats.nodes = main.getSplitNodes();
+        return stats;
+    }
+}
@@ -0,0 +1,86 @@
+// Fixed corpus of positions the benchmarks run on. Boards are drawn with
+// row 0 (black's side) at the top: b/B are black men/kings, r/R red men/kings
+// and any other character is an empty square
+public class BenchmarkPositions {
+
+    public static final String[] NAMES = {"opening", "middlegame", "multijump", "kingEndgame"};
+
+    private static final String[][] BOARDS = {
+            {
+                    ".b.b.b.b",
+                    "b.b.b.b.",
+                    ".b.b.b.b",
+                    "........",
+                    "........",
+                    "r.r.r.r.",
+                    ".r.r.r.r",
+                    "r.r.r.r.",
+            },
+            {
+                    ".b.b.b..",
+                    "b.b...b.",
+                    "...b.b.b",
+                    "..b.....",
+                    ".r...b..",
+                    "r...r.r.",
+                    ".r.r...r",
+                    "r.r.r.r.",
+            },
+            {
+                    ".B......",
+                    "..r.r...",
+                    ".....b..",
+                    "..r.r...",
+                    "........",
+                    "..r.r...",
+                    "........",
+                    "r.....r.",
+            },
+            {
+                    "........",
+                    "..R.....",
+                    "........",
+                    "....B...",
+                    ".B......",
+                    "......R.",
+                    "........",
+                    "B.......",
+            },
+    };
+
+    // side to move in each position
+    private static final int[] COLORS = {1, -1, 1, 1};
+
+    public static int getColor(int index) {
+        return COLORS[index];
+    }
+
+    // builds a fresh ProtoBoard holding the position at index
+    public static ProtoBoard getBoard(int index) {
+        ProtoBoard protoBoard = new ProtoBoard();
+        String[] rows = BOARDS[index];
+        for (int i = 0; i < Board.rows; i++) {
+            for (int j = 0; j < Board.cols; j++) {
+                short piece = pieceValue(rows[i].charAt(j));
+                if ((i + j) % 2 == 0) {
+                    if (piece != 0)
+                        throw new IllegalArgumentException(NAMES[index] + ": piece on light square " + i + "," + j);
+                    continue;
+                }
+                protoBoard.setSquare(i, j, piece);
+            }
+        }
+        protoBoard.setSideToMove(COLORS[index]);
+        return protoBoard;
+    }
+
+    private static short pieceValue(char c) {
+        switch (c) {
+            case 'b': return 2;
+            case 'B': return 5;
+            case 'r': return -2;
+            case 'R': return -5;
+            default: return 0;
+        }
+    }
+}
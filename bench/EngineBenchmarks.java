@@ -0,0 +1,123 @@
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+// Benchmarks for move generation, make/unmake, hashing, evaluation and fixed
+// depth search over the positions in BenchmarkPositions.
+// Every benchmark is warmed up and then measured over timed iterations. Allocation
+// per operation comes from the thread's allocated bytes counter, which is the
+// same figure JMH's gc profiler reports as gc.alloc.rate.norm
+//
+// From the repository root:
+//   javac -d out *.java bench/*.java
+//   java -cp out EngineBenchmarks [name filter] [search depth]
+public class EngineBenchmarks {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_MILLIS = 1000;
+
+    // a single benchmarked operation, returns something so it cannot be optimized away
+    interface Operation {
+        long run();
+    }
+
+    private static final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // results are accumulated here so the JIT has to compute them
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        int searchDepth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        System.out.printf(Locale.ROOT, "%-22s %-12s %14s %12s %12s %12s%n",
+                "Benchmark", "Position", "ops/s", "ns/op", "error", "B/op");
+        for (int p = 0; p < BenchmarkPositions.NAMES.length; p++) {
+            final ProtoBoard protoBoard = BenchmarkPositions.getBoard(p);
+            final int color = BenchmarkPositions.getColor(p);
+            final int[] moves = new int[ProtoBoard.MAX_MOVES];
+            final Engine engine = new Engine();
+            String position = BenchmarkPositions.NAMES[p];
+
+            run(filter, "generateLegalMoves", position,
+                    () -> protoBoard.generateLegalMoves(color).size());
+            run(filter, "generateMoves", position,
+                    () -> protoBoard.generateMoves(color, moves));
+            run(filter, "makeUnmakeMove", position, () -> {
+                int count = protoBoard.generateMoves(color, moves);
+                long hash = 0;
+                for (int i = 0; i < count; i++) {
+                    protoBoard.makeMove(moves[i]);
+                    hash ^= protoBoard.getZobristHash();
+                    protoBoard.unmakeMove();
+                }
+                return hash;
+            });
+            run(filter, "getZobristHash", position, protoBoard::getZobristHash);
+            run(filter, "evaluatePosition", position,
+                    () -> (long) engine.evaluatePosition(protoBoard));
+            // created once so that bytes per operation show what the search
+            // allocates, not the transposition table
+            final Engine searchEngine = new Engine();
+            run(filter, "nextBestMove(" + searchDepth + ")", position, () -> {
+                searchEngine.clear();
+                searchEngine.nextBestMove(protoBoard, color, searchDepth);
+                return searchEngine.getEval();
+            });
+        }
+    }
+
+    private static void run(String filter, String name, String position, Operation operation) {
+        if (!name.contains(filter))
+            return;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+        double[] nanosPerOp = new double[MEASUREMENT_ITERATIONS];
+        double totalOps = 0;
+        double totalNanos = 0;
+        double totalBytes = 0;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            long[] result = iteration(operation);
+            nanosPerOp[i] = (double) result[1] / result[0];
+            totalOps += result[0];
+            totalNanos += result[1];
+            totalBytes += result[2];
+        }
+        double mean = totalNanos / totalOps;
+        double variance = 0;
+        for (double n : nanosPerOp) {
+            variance += (n - mean) * (n - mean);
+        }
+        double error = Math.sqrt(variance / (MEASUREMENT_ITERATIONS - 1));
+        System.out.printf(Locale.ROOT, "%-22s %-12s %14.1f %12.1f %12.1f %12.1f%n",
+                name, position, 1e9 / mean, mean, error, totalBytes / totalOps);
+    }
+
+    // runs the operation for one iteration and returns {operations, nanos, bytes allocated}
+    private static long[] iteration(Operation operation) {
+        long thread = Thread.currentThread().getId();
+        long ops = 0;
+        long result = 0;
+        // cheap operations run in growing batches so reading the clock does not dominate
+        int batch = 1;
+        long bytes = threadBean.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long end = start + ITERATION_MILLIS * 1000000;
+        long now;
+        do {
+            long batchStart = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                result += operation.run();
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if (now - batchStart < 100000)
+                batch *= 2;
+        } while (now < end);
+        bytes = threadBean.getThreadAllocatedBytes(thread) - bytes;
+        sink += result;
+        return new long[]{ops, now - start, bytes};
+    }
+}
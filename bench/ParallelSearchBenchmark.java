@@ -0,0 +1,56 @@
+import java.util.Locale;
+
+// Measures time to depth of the parallel search modes against the single
+// threaded search over the positions in BenchmarkPositions: lazy SMP, YBWC and
+// deterministic YBWC with 1, 2, 4, ... threads. Each search starts with a fresh
+// engine so that no thread count benefits from an already filled table
+//
+// From the repository root:
+//   javac -d out *.java bench/*.java
+//   java -cp out ParallelSearchBenchmark [depth] [max threads] [runs] [split depth]
+public class ParallelSearchBenchmark {
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int splitDepth = args.length > 3 ? Integer.parseInt(args[3]) : new Engine().getSplitDepth();
+
+        System.out.printf(Locale.ROOT, "%-12s %-10s %8s %12s %14s %10s%n",
+                "Position", "Mode", "Threads", "ms/search", "nodes/search", "speedup");
+        for (int p = 0; p < BenchmarkPositions.NAMES.length; p++) {
+            double singleThreaded = 0;
+            for (String mode : new String[]{"lazy-smp", "ybwc", "ybwc-det"}) {
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    // the first run warms up the JIT and is not counted
+                    double millis = 0;
+                    long nodes = 0;
+                    for (int run = 0; run <= runs; run++) {
+                        Engine engine = new Engine();
+                        engine.setThreads(threads);
+                        engine.setParallelMode(mode.equals("lazy-smp")
+                                ? Engine.ParallelMode.LAZY_SMP : Engine.ParallelMode.YBWC);
+                        engine.setDeterministic(mode.equals("ybwc-det"));
+                        engine.setSplitDepth(splitDepth);
+                        ProtoBoard protoBoard = BenchmarkPositions.getBoard(p);
+                        long start = System.nanoTime();
+                        engine.nextBestMove(protoBoard, BenchmarkPositions.getColor(p), depth);
+                        if (run > 0) {
+                            millis += (System.nanoTime() - start) / 1e6;
+                            nodes += engine.getNodes();
+                        }
+                        // releases the helper threads
+                        engine.setThreads(1);
+                    }
+                    millis /= runs;
+                    // lazy SMP with one thread is the plain sequential search
+                    if (threads == 1 && mode.equals("lazy-smp"))
+                        singleThreaded = millis;
+                    System.out.printf(Locale.ROOT, "%-12s %-10s %8d %12.1f %14d %10.2f%n",
+                            BenchmarkPositions.NAMES[p], mode, threads, millis, nodes / runs, singleThreaded / millis);
+                }
+            }
+        }
+    }
+}